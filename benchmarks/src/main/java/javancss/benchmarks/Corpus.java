@@ -0,0 +1,180 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+
+package javancss.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javancss.parser.JavaParser;
+
+/**
+ * Sources the benchmarks are run on. The corpus directory defaults to
+ * the test sources of JavaNCSS and can be changed with the system
+ * property <tt>javancss.corpus</tt>.
+ *
+ * @version $Id$
+ */
+final class Corpus
+{
+    private Corpus()
+    {
+    }
+
+    static File getDirectory()
+    {
+        return new File( System.getProperty( "javancss.corpus", "../src/test/resources" ) );
+    }
+
+    /**
+     * @return all Java files below the directory, sorted by path.
+     */
+    static List<File> findJavaFiles( File directory )
+    {
+        List<File> files = new ArrayList<File>();
+        _findJavaFiles( directory, files );
+        if ( files.isEmpty() )
+        {
+            throw new IllegalStateException( "No Java files found in " + directory.getAbsolutePath() );
+        }
+
+        return files;
+    }
+
+    private static void _findJavaFiles( File directory, List<File> files )
+    {
+        File[] children = directory.listFiles();
+        if ( children == null )
+        {
+            return;
+        }
+        Arrays.sort( children );
+        for ( File child : children )
+        {
+            if ( child.isDirectory() )
+            {
+                _findJavaFiles( child, files );
+            }
+            else if ( child.getName().endsWith( ".java" ) )
+            {
+                files.add( child );
+            }
+        }
+    }
+
+    /**
+     * @return the content of the Java files below the directory which
+     *         can be parsed, the test corpus contains some which can not.
+     */
+    static List<String> readParseableSources( File directory )
+        throws IOException
+    {
+        List<String> sources = new ArrayList<String>();
+        for ( File file : findJavaFiles( directory ) )
+        {
+            String source = read( file );
+            try
+            {
+                new JavaParser( new StringReader( source ) ).parse();
+                sources.add( source );
+            }
+            catch ( Throwable e )
+            {
+                // not part of the parser benchmark
+            }
+        }
+
+        return sources;
+    }
+
+    static String read( File file )
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder( (int) file.length() );
+        Reader reader = new InputStreamReader( new FileInputStream( file ), "ISO-8859-1" );
+        try
+        {
+            char[] buffer = new char[8192];
+            int read;
+            while ( ( read = reader.read( buffer ) ) != -1 )
+            {
+                sb.append( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Generates one compilation unit with the given number of classes,
+     * each with the given number of methods using the usual statements.
+     */
+    static String generateSource( int classes, int methodsPerClass )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "package javancss.generated;\n\n" );
+        sb.append( "import java.util.ArrayList;\n" );
+        sb.append( "import java.util.List;\n\n" );
+        for ( int c = 0; c < classes; c++ )
+        {
+            sb.append( "/**\n * Generated class " ).append( c ).append( ".\n */\n" );
+            sb.append( "class Generated" ).append( c ).append( "\n{\n" );
+            sb.append( "    private final List<String> _values = new ArrayList<String>();\n\n" );
+            for ( int m = 0; m < methodsPerClass; m++ )
+            {
+                sb.append( "    /** Method " ).append( m ).append( ". */\n" );
+                sb.append( "    public int method" ).append( m ).append( "( int a, String b )\n    {\n" );
+                sb.append( "        // single line comment\n" );
+                sb.append( "        int sum = 0;\n" );
+                sb.append( "        for ( int i = 0; i < a; i++ )\n        {\n" );
+                sb.append( "            if ( i % 2 == 0 && b != null )\n            {\n" );
+                sb.append( "                sum += b.length();\n" );
+                sb.append( "            }\n            else\n            {\n" );
+                sb.append( "                sum -= i > 3 ? 1 : 2;\n" );
+                sb.append( "            }\n        }\n" );
+                sb.append( "        /* multi line\n           comment */\n" );
+                sb.append( "        switch ( sum )\n        {\n" );
+                sb.append( "            case 0: _values.add( \"zero\" ); break;\n" );
+                sb.append( "            default: _values.add( String.valueOf( sum ) );\n" );
+                sb.append( "        }\n" );
+                sb.append( "        try\n        {\n" );
+                sb.append( "            return Integer.parseInt( b ) + sum;\n" );
+                sb.append( "        }\n        catch ( NumberFormatException e )\n        {\n" );
+                sb.append( "            return sum;\n" );
+                sb.append( "        }\n    }\n\n" );
+            }
+            sb.append( "}\n\n" );
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+
+package javancss.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javancss.AsciiFormatter;
+import javancss.FunctionMetric;
+import javancss.Javancss;
+import javancss.XmlFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Printing the function metrics of a large project, the output itself
+ * is discarded.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class FormatterBenchmark
+{
+    @Param( { "100000" } )
+    public int functions;
+
+    private Javancss _javancss;
+
+    @Setup
+    public void setUp()
+    {
+        _javancss = new Javancss();
+        List<FunctionMetric> functionMetrics = _javancss.getFunctionMetrics();
+        for ( int i = 0; i < functions; i++ )
+        {
+            FunctionMetric functionMetric = new FunctionMetric();
+            functionMetric.name = "javancss.generated.Generated" + ( i / 20 ) + ".method" + ( i % 20 ) + "(int,String)";
+            functionMetric.ncss = 1 + i % 37;
+            functionMetric.ccn = 1 + i % 11;
+            functionMetric.javadocs = i % 2;
+            functionMetrics.add( functionMetric );
+        }
+    }
+
+    @Benchmark
+    public long asciiFunctions()
+        throws IOException
+    {
+        CountingWriter w = new CountingWriter();
+        new AsciiFormatter( _javancss ).printFunctionNcss( w );
+
+        return w.count;
+    }
+
+    @Benchmark
+    public long xmlFunctions()
+        throws IOException
+    {
+        CountingWriter w = new CountingWriter();
+        new XmlFormatter( _javancss ).printFunctionNcss( w );
+
+        return w.count;
+    }
+
+    /**
+     * Keeps the size of the output only, so that buffering it does
+     * not become part of the measurement.
+     */
+    private static class CountingWriter
+        extends Writer
+    {
+        private long count = 0;
+
+        @Override
+        public void write( char[] cbuf, int off, int len )
+        {
+            count += len;
+        }
+
+        @Override
+        public void write( String str )
+        {
+            count += str.length();
+        }
+
+        @Override
+        public void flush()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
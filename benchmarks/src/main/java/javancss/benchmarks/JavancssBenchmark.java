@@ -0,0 +1,76 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+
+package javancss.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javancss.Javancss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measuring all Java files of a directory, from reading the files to
+ * the merged package, object and function metrics.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class JavancssBenchmark
+{
+    @Param( { "1", "4" } )
+    public int threads;
+
+    private List<File> _files;
+
+    @Setup
+    public void setUp()
+    {
+        _files = Corpus.findJavaFiles( Corpus.getDirectory() );
+    }
+
+    @Benchmark
+    public int measureDirectory()
+    {
+        Javancss javancss = new Javancss();
+        javancss.setThreads( threads );
+        javancss.measure( _files );
+
+        return javancss.getNcss();
+    }
+}
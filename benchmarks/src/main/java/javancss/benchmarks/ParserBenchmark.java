@@ -0,0 +1,99 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+
+package javancss.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javancss.parser.JavaParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the parser alone, without file access.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ParserBenchmark
+{
+    private List<String> _corpus;
+
+    private String _largeSource;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        _corpus = Corpus.readParseableSources( Corpus.getDirectory() );
+        // about 2 MB, 50000 NCSS
+        _largeSource = Corpus.generateSource( 200, 20 );
+    }
+
+    /**
+     * One operation parses every source of the corpus once.
+     */
+    @Benchmark
+    public int parseCorpus()
+        throws Exception
+    {
+        int ncss = 0;
+        for ( String source : _corpus )
+        {
+            ncss += parse( source );
+        }
+
+        return ncss;
+    }
+
+    @Benchmark
+    public int parseLargeFile()
+        throws Exception
+    {
+        return parse( _largeSource );
+    }
+
+    private static int parse( String source )
+        throws Exception
+    {
+        JavaParser parser = new JavaParser( new StringReader( source ) );
+        parser.parse();
+
+        return parser.getNcss();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A source file in a JAR or ZIP archive. Its path is the path of the
+ * archive followed by "!/" and the name of the entry, as in jar URLs,
+ * so that it shows up like that in error messages. The content has
+ * already been read from the archive, to be measured without
+ * extracting the archive first. Source files read from git are kept
+ * in the same way.
+ *
+ * @version $Id$
+ */
+class ArchiveEntry
+    extends File
+{
+    private static final long serialVersionUID = 1L;
+
+    private final transient byte[] _content;
+
+    private final transient IOException _error;
+
+    ArchiveEntry( File archive, String entryName, byte[] content )
+    {
+        super( archive.getPath() + "!/" + entryName );
+        _content = content;
+        _error = null;
+    }
+
+    /**
+     * A source file read from elsewhere, e.g. from git.
+     */
+    ArchiveEntry( String path, byte[] content )
+    {
+        super( path );
+        _content = content;
+        _error = null;
+    }
+
+    /**
+     * An archive that could not be read, reading the entry fails with
+     * the given error.
+     */
+    ArchiveEntry( File archive, IOException error )
+    {
+        super( archive.getPath() );
+        _content = null;
+        _error = error;
+    }
+
+    static boolean isArchive( File file )
+    {
+        String name = file.getName().toLowerCase();
+
+        return name.endsWith( ".jar" ) || name.endsWith( ".zip" );
+    }
+
+    /**
+     * Reads the rest of the given entry stream.
+     */
+    static byte[] read( InputStream in, long size )
+        throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream( size > 0 && size < Integer.MAX_VALUE ? (int) size : 8192 );
+        byte[] buffer = new byte[8192];
+        int read;
+        while ( ( read = in.read( buffer ) ) != -1 )
+        {
+            content.write( buffer, 0, read );
+        }
+
+        return content.toByteArray();
+    }
+
+    /**
+     * @return the size of the content, 0 if it could not be read.
+     */
+    @Override
+    public long length()
+    {
+        return _content == null ? 0 : _content.length;
+    }
+
+    byte[] getContent()
+        throws IOException
+    {
+        if ( _error != null )
+        {
+            throw _error;
+        }
+
+        return _content;
+    }
+}
@@ -299,15 +299,21 @@ public class AsciiFormatter implements Formatter
                                                             , "JVDC"
                                                             , "Function" } ) );
 
+        // a compact table is read column by column, without a
+        // FunctionMetric per function
+        FunctionMetricTable table = vFunctionMetrics instanceof FunctionMetricTable
+            ? (FunctionMetricTable) vFunctionMetrics : null;
+
         long lFunctionSum = 0;
         long lCCNSum      = 0;
         long lJVDCSum     = 0;
-        for ( FunctionMetric functionMetric : vFunctionMetrics )
+        for ( int i = 0; i < vFunctionMetrics.size(); i++ )
         {
-            String sFunction = functionMetric.name;
-            int functionNcss = functionMetric.ncss;
-            int functionCCN  = functionMetric.ccn;
-            int functionJVDC = functionMetric.javadocs;
+            FunctionMetric functionMetric = table == null ? vFunctionMetrics.get( i ) : null;
+            String sFunction = table == null ? functionMetric.name : table.getName( i );
+            int functionNcss = table == null ? functionMetric.ncss : table.getNcss( i );
+            int functionCCN  = table == null ? functionMetric.ccn : table.getCcn( i );
+            int functionJVDC = table == null ? functionMetric.javadocs : table.getJavadocs( i );
 
             lFunctionSum += functionNcss;
             lCCNSum      += functionCCN;
@@ -335,7 +341,47 @@ public class AsciiFormatter implements Formatter
     }
 
     public void printEnd( Writer w )
+        throws IOException
     {
+        RunStatistics statistics = _javancss.getRunStatistics();
+        if ( statistics == null )
+        {
+            return;
+        }
+
+        w.write( NL + "Run statistics:" + NL );
+        w.write( String.format( Locale.US,
+                  "Threads:              %,14d" + NL
+                + "Files:                %,14d" + NL
+                + "Bytes:                %,14d" + NL
+                + "Tokens:               %,14d" + NL
+                + "Duplicate files:      %,14d" + NL
+                + "Duplicate bytes:      %,14d" + NL
+                + "Over budget files:    %,14d" + NL
+                + "Time (ms):            %,14.2f" + NL
+                + "Files per second:     %,14.2f" + NL
+                + "Bytes per second:     %,14.2f" + NL
+                + "Tokens per second:    %,14.2f" + NL
+                + "Discovery (ms):       %,14.2f" + NL
+                + "Reading (ms):         %,14.2f" + NL
+                + "Lexing (ms):          %,14.2f" + NL
+                + "Parsing (ms):         %,14.2f" + NL
+                + "Aggregation (ms):     %,14.2f" + NL
+                + "Formatting (ms):      %,14.2f" + NL
+                + "Peak heap (bytes):    %,14d" + NL,
+                statistics.getThreads(), statistics.getFiles(), statistics.getBytes(), statistics.getTokens(),
+                statistics.getDuplicateFiles(), statistics.getDuplicateBytes(), statistics.getBudgetExceededFiles(),
+                statistics.getTime() / 1e6, statistics.getFilesPerSecond(), statistics.getBytesPerSecond(),
+                statistics.getTokensPerSecond(), statistics.getDiscoveryTime() / 1e6, statistics.getReadingTime() / 1e6,
+                statistics.getLexingTime() / 1e6, statistics.getParsingTime() / 1e6,
+                statistics.getAggregationTime() / 1e6, statistics.getFormattingTime() / 1e6,
+                statistics.getPeakHeap() ) );
+
+        w.write( NL + "Slowest files (ms):" + NL );
+        for ( RunStatistics.FileTime fileTime : statistics.getSlowestFiles() )
+        {
+            w.write( String.format( Locale.US, "%,10.2f  %s" + NL, fileTime.getTime() / 1e6, fileTime.getPath() ) );
+        }
     }
 
     private String multiplyChar( char c, int count )
@@ -0,0 +1,551 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Metrics read back from an XML report, which can be updated with the
+ * metrics of changed source files instead of measuring all files again.
+ * The report does not say which file an object or function comes from,
+ * so the stale metrics are given as the measurement of the old version
+ * of each changed file. Reports of separately measured source files,
+ * like the shards of a run, can be merged as well.
+ *
+ * @version $Id$
+ */
+class BaselineReport
+{
+    private List<PackageMetric> _vPackageMetrics = null;
+    private List<ObjectMetric> _vObjectMetrics = null;
+    private List<FunctionMetric> _vFunctionMetrics = null;
+
+    /** Program NCSS, -1 if the report does not contain it. */
+    private int _ncss = -1;
+
+    /** Metrics of the old versions that were not in the report. */
+    private int _missing = 0;
+
+    private BaselineReport()
+    {
+    }
+
+    /**
+     * Reads a report written by the XmlFormatter.
+     */
+    static BaselineReport read( File file )
+        throws IOException
+    {
+        Element root;
+        try
+        {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature( XMLConstants.FEATURE_SECURE_PROCESSING, true );
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            root = builder.parse( file ).getDocumentElement();
+        }
+        catch ( ParserConfigurationException e )
+        {
+            throw new IOException( e );
+        }
+        catch ( SAXException e )
+        {
+            throw new IOException( "Cannot read baseline report " + file + ": " + e.getMessage() );
+        }
+        if ( !root.getTagName().equals( "javancss" ) )
+        {
+            throw new IOException( "Not a JavaNCSS XML report: " + file );
+        }
+
+        BaselineReport report = new BaselineReport();
+        for ( Element section : _children( root, null ) )
+        {
+            String name = section.getTagName();
+            if ( name.equals( "ncss" ) )
+            {
+                report._ncss = _number( section );
+            }
+            else if ( name.equals( "packages" ) )
+            {
+                report._vPackageMetrics = new ArrayList<PackageMetric>();
+                for ( Element element : _children( section, "package" ) )
+                {
+                    PackageMetric packageMetric = new PackageMetric();
+                    packageMetric.name = _text( element, "name" );
+                    packageMetric.classes = _number( element, "classes" );
+                    packageMetric.functions = _number( element, "functions" );
+                    _readComments( packageMetric, element, "javadoc_lines", "multi_comment_lines" );
+                    report._vPackageMetrics.add( packageMetric );
+                }
+            }
+            else if ( name.equals( "objects" ) )
+            {
+                report._vObjectMetrics = new ArrayList<ObjectMetric>();
+                for ( Element element : _children( section, "object" ) )
+                {
+                    ObjectMetric objectMetric = new ObjectMetric();
+                    objectMetric.name = _text( element, "name" );
+                    objectMetric.functions = _number( element, "functions" );
+                    objectMetric.classes = _number( element, "classes" );
+                    _readComments( objectMetric, element, "javadocs_lines", "implementation_comment_lines" );
+                    report._vObjectMetrics.add( objectMetric );
+                }
+                report._ncss = _number( section, "ncss" );
+            }
+            else if ( name.equals( "functions" ) )
+            {
+                report._vFunctionMetrics = new ArrayList<FunctionMetric>();
+                for ( Element element : _children( section, "function" ) )
+                {
+                    FunctionMetric functionMetric = new FunctionMetric();
+                    functionMetric.name = _text( element, "name" );
+                    functionMetric.ncss = _number( element, "ncss" );
+                    functionMetric.ccn = _number( element, "ccn" );
+                    functionMetric.javadocs = _number( element, "javadocs" );
+                    report._vFunctionMetrics.add( functionMetric );
+                }
+                report._ncss = _number( section, "ncss" );
+            }
+        }
+
+        return report;
+    }
+
+    private static void _readComments( Metric metric, Element element, String javadocLines, String multiLines )
+        throws IOException
+    {
+        metric.ncss = _number( element, "ncss" );
+        metric.javadocs = _number( element, "javadocs" );
+        metric.javadocsLn = _number( element, javadocLines );
+        metric.singleLn = _number( element, "single_comment_lines" );
+        metric.multiLn = _number( element, multiLines );
+    }
+
+    private static List<Element> _children( Element parent, String name )
+    {
+        List<Element> children = new ArrayList<Element>();
+        for ( Node child = parent.getFirstChild(); child != null; child = child.getNextSibling() )
+        {
+            if ( child instanceof Element && ( name == null || ( (Element) child ).getTagName().equals( name ) ) )
+            {
+                children.add( (Element) child );
+            }
+        }
+
+        return children;
+    }
+
+    private static String _text( Element parent, String name )
+        throws IOException
+    {
+        List<Element> children = _children( parent, name );
+        if ( children.isEmpty() )
+        {
+            throw new IOException( "Missing <" + name + "> in <" + parent.getTagName() + "> of the baseline report" );
+        }
+
+        return children.get( 0 ).getTextContent().trim();
+    }
+
+    private static int _number( Element parent, String name )
+        throws IOException
+    {
+        return _number( _children( parent, name ).isEmpty() ? null : _children( parent, name ).get( 0 ) );
+    }
+
+    /**
+     * Totals are written like "1,234.00".
+     */
+    private static int _number( Element element )
+        throws IOException
+    {
+        if ( element == null )
+        {
+            return 0;
+        }
+        String text = element.getTextContent().trim();
+        try
+        {
+            return NumberFormat.getInstance( Locale.US ).parse( text ).intValue();
+        }
+        catch ( ParseException e )
+        {
+            throw new IOException( "Not a number in <" + element.getTagName() + "> of the baseline report: " + text );
+        }
+    }
+
+    boolean hasPackages()
+    {
+        return _vPackageMetrics != null;
+    }
+
+    boolean hasObjects()
+    {
+        return _vObjectMetrics != null;
+    }
+
+    boolean hasFunctions()
+    {
+        return _vFunctionMetrics != null;
+    }
+
+    boolean hasNcss()
+    {
+        return _ncss >= 0;
+    }
+
+    int getNcss()
+    {
+        return _ncss;
+    }
+
+    /**
+     * @return the packages sorted by name, as Javancss returns them.
+     */
+    List<PackageMetric> getPackageMetrics()
+    {
+        List<PackageMetric> vPackageMetrics = new ArrayList<PackageMetric>( _vPackageMetrics );
+        Collections.sort( vPackageMetrics );
+
+        return vPackageMetrics;
+    }
+
+    List<ObjectMetric> getObjectMetrics()
+    {
+        return _vObjectMetrics;
+    }
+
+    List<FunctionMetric> getFunctionMetrics()
+    {
+        return _vFunctionMetrics;
+    }
+
+    /**
+     * @return the number of objects and functions of old versions that
+     *         could not be found in the report, i.e. the report was not
+     *         created from the old versions.
+     */
+    int getMissing()
+    {
+        return _missing;
+    }
+
+    /**
+     * Replaces the metrics of the changed source files. The objects and
+     * functions of the new version of a file take the place of the ones
+     * of the old version, so a report updated with the changed files
+     * lists them in the same order as a report of all files.
+     *
+     * @param vPrevious metrics of the old versions, null elements for
+     *                  added files.
+     * @param vCurrent metrics of the new versions in the same order,
+     *                 null elements for deleted files.
+     */
+    void replace( List<FileMetric> vPrevious, List<FileMetric> vCurrent )
+    {
+        if ( _vObjectMetrics != null )
+        {
+            List<List<ObjectMetric>> vOld = new ArrayList<List<ObjectMetric>>();
+            List<List<ObjectMetric>> vNew = new ArrayList<List<ObjectMetric>>();
+            for ( int i = 0; i < vPrevious.size(); i++ )
+            {
+                vOld.add( vPrevious.get( i ) == null ? null : vPrevious.get( i ).objectMetrics );
+                vNew.add( vCurrent.get( i ) == null ? null : vCurrent.get( i ).objectMetrics );
+            }
+            _vObjectMetrics = _replace( _vObjectMetrics, vOld, vNew );
+        }
+        if ( _vFunctionMetrics != null )
+        {
+            List<List<FunctionMetric>> vOld = new ArrayList<List<FunctionMetric>>();
+            List<List<FunctionMetric>> vNew = new ArrayList<List<FunctionMetric>>();
+            for ( int i = 0; i < vPrevious.size(); i++ )
+            {
+                vOld.add( vPrevious.get( i ) == null ? null : vPrevious.get( i ).functionMetrics );
+                vNew.add( vCurrent.get( i ) == null ? null : vCurrent.get( i ).functionMetrics );
+            }
+            _vFunctionMetrics = _replace( _vFunctionMetrics, vOld, vNew );
+        }
+        if ( _vPackageMetrics != null )
+        {
+            Map<String, PackageMetric> htPackages = new HashMap<String, PackageMetric>();
+            for ( PackageMetric packageMetric : _vPackageMetrics )
+            {
+                htPackages.put( packageMetric.name, packageMetric );
+            }
+            for ( int i = 0; i < vPrevious.size(); i++ )
+            {
+                if ( vPrevious.get( i ) != null )
+                {
+                    _addPackages( htPackages, vPrevious.get( i ).packageMetrics.values(), -1 );
+                }
+                if ( vCurrent.get( i ) != null )
+                {
+                    _addPackages( htPackages, vCurrent.get( i ).packageMetrics.values(), 1 );
+                }
+            }
+
+            // packages without any classes left are gone
+            for ( Iterator<PackageMetric> packages = _vPackageMetrics.iterator(); packages.hasNext(); )
+            {
+                PackageMetric packageMetric = packages.next();
+                if ( packageMetric.classes <= 0 && packageMetric.ncss <= 0 )
+                {
+                    packages.remove();
+                }
+            }
+        }
+        if ( _ncss >= 0 )
+        {
+            for ( int i = 0; i < vPrevious.size(); i++ )
+            {
+                _ncss += ( vCurrent.get( i ) == null ? 0 : vCurrent.get( i ).ncss )
+                    - ( vPrevious.get( i ) == null ? 0 : vPrevious.get( i ).ncss );
+            }
+        }
+    }
+
+    /**
+     * Adds the metrics of a report of other source files, e.g. of
+     * another shard of the same run. Sections missing in one of the
+     * reports are missing in the result.
+     */
+    void add( BaselineReport report )
+    {
+        if ( _vPackageMetrics != null && report._vPackageMetrics != null )
+        {
+            Map<String, PackageMetric> htPackages = new HashMap<String, PackageMetric>();
+            for ( PackageMetric packageMetric : _vPackageMetrics )
+            {
+                htPackages.put( packageMetric.name, packageMetric );
+            }
+            for ( PackageMetric part : report._vPackageMetrics )
+            {
+                PackageMetric total = htPackages.get( part.name );
+                if ( total == null )
+                {
+                    total = new PackageMetric();
+                    total.name = part.name;
+                    htPackages.put( total.name, total );
+                    _vPackageMetrics.add( total );
+                }
+                total.add( part );
+            }
+        }
+        else
+        {
+            _vPackageMetrics = null;
+        }
+        _vObjectMetrics = _concat( _vObjectMetrics, report._vObjectMetrics );
+        _vFunctionMetrics = _concat( _vFunctionMetrics, report._vFunctionMetrics );
+        _ncss = _ncss >= 0 && report._ncss >= 0 ? _ncss + report._ncss : -1;
+    }
+
+    private static <T> List<T> _concat( List<T> vMetrics, List<T> vOtherMetrics )
+    {
+        if ( vMetrics == null || vOtherMetrics == null )
+        {
+            return null;
+        }
+        vMetrics.addAll( vOtherMetrics );
+
+        return vMetrics;
+    }
+
+    /**
+     * Takes out the old metrics of each file and puts the new ones at
+     * the place of the first one found. The metrics are indexed by name
+     * once and the list is rebuilt once, whatever the number of files.
+     * Names are not unique, e.g. for classes in the default package, so
+     * only a metric with the same values is taken out.
+     *
+     * @return the new list of metrics.
+     */
+    private <T extends Metric> List<T> _replace( List<T> vMetrics, List<? extends List<? extends T>> vPrevious,
+                                                 List<? extends List<? extends T>> vCurrent )
+    {
+        Map<String, List<Integer>> htIndexes = new HashMap<String, List<Integer>>();
+        for ( int i = 0; i < vMetrics.size(); i++ )
+        {
+            List<Integer> vIndexes = htIndexes.get( vMetrics.get( i ).name );
+            if ( vIndexes == null )
+            {
+                vIndexes = new ArrayList<Integer>( 1 );
+                htIndexes.put( vMetrics.get( i ).name, vIndexes );
+            }
+            vIndexes.add( i );
+        }
+
+        boolean[] removed = new boolean[vMetrics.size()];
+        Map<Integer, List<? extends T>> htInserted = new HashMap<Integer, List<? extends T>>();
+        List<T> vAdded = new ArrayList<T>();
+        for ( int file = 0; file < vPrevious.size(); file++ )
+        {
+            int index = -1;
+            if ( vPrevious.get( file ) != null )
+            {
+                for ( T previous : vPrevious.get( file ) )
+                {
+                    // the metrics of a file are next to each other
+                    int found = _indexOf( vMetrics, htIndexes.get( previous.name ), removed, previous, index );
+                    if ( found < 0 )
+                    {
+                        _missing++;
+                        continue;
+                    }
+                    removed[found] = true;
+                    if ( index < 0 || found < index )
+                    {
+                        index = found;
+                    }
+                }
+            }
+            if ( vCurrent.get( file ) != null )
+            {
+                if ( index < 0 )
+                {
+                    vAdded.addAll( vCurrent.get( file ) );
+                }
+                else
+                {
+                    htInserted.put( index, vCurrent.get( file ) );
+                }
+            }
+        }
+
+        List<T> vReplaced = new ArrayList<T>( vMetrics.size() + vAdded.size() );
+        for ( int i = 0; i < vMetrics.size(); i++ )
+        {
+            List<? extends T> vInserted = htInserted.get( i );
+            if ( vInserted != null )
+            {
+                vReplaced.addAll( vInserted );
+            }
+            if ( !removed[i] )
+            {
+                vReplaced.add( vMetrics.get( i ) );
+            }
+        }
+        vReplaced.addAll( vAdded );
+
+        return vReplaced;
+    }
+
+    /**
+     * @param vIndexes of the metrics with the name of the one looked for,
+     *                 null if there are none.
+     * @param start index of a metric of the same file already found, -1
+     *              if none, so the one closest after it is preferred.
+     * @return the index of a metric with the same values not taken out
+     *         yet, -1 if there is none.
+     */
+    private static int _indexOf( List<? extends Metric> vMetrics, List<Integer> vIndexes, boolean[] removed,
+                                 Metric metric, int start )
+    {
+        int first = -1;
+        if ( vIndexes != null )
+        {
+            for ( int index : vIndexes )
+            {
+                if ( !removed[index] && _sameValues( vMetrics.get( index ), metric ) )
+                {
+                    if ( index >= start )
+                    {
+                        return index;
+                    }
+                    if ( first < 0 )
+                    {
+                        first = index;
+                    }
+                }
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Compares all the values a report contains of an object or
+     * function, the names are equal already.
+     */
+    private static boolean _sameValues( Metric metric, Metric other )
+    {
+        if ( metric.ncss != other.ncss || metric.javadocs != other.javadocs )
+        {
+            return false;
+        }
+        if ( metric instanceof FunctionMetric )
+        {
+            return ( (FunctionMetric) metric ).ccn == ( (FunctionMetric) other ).ccn;
+        }
+        ObjectMetric objectMetric = (ObjectMetric) metric;
+        ObjectMetric otherObject = (ObjectMetric) other;
+
+        return objectMetric.functions == otherObject.functions && objectMetric.classes == otherObject.classes
+            && metric.javadocsLn == other.javadocsLn && metric.singleLn == other.singleLn
+            && metric.multiLn == other.multiLn;
+    }
+
+    private void _addPackages( Map<String, PackageMetric> htPackages, Iterable<PackageMetric> vParts, int sign )
+    {
+        for ( PackageMetric part : vParts )
+        {
+            PackageMetric total = htPackages.get( part.name );
+            if ( total == null )
+            {
+                if ( sign < 0 )
+                {
+                    _missing++;
+                    continue;
+                }
+                total = new PackageMetric();
+                total.name = part.name;
+                htPackages.put( total.name, total );
+                _vPackageMetrics.add( total );
+            }
+            total.classes += sign * part.classes;
+            total.functions += sign * part.functions;
+            total.ncss += sign * part.ncss;
+            total.javadocs += sign * part.javadocs;
+            total.javadocsLn += sign * part.javadocsLn;
+            total.singleLn += sign * part.singleLn;
+            total.multiLn += sign * part.multiLn;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import javancss.parser.JavaCharStream;
+import javancss.parser.JavaParserTokenManager;
+import javancss.parser.Token;
+
+/**
+ * Token manager which stops the parser, once it has read more tokens
+ * than allowed or its measurement has been given up because it took
+ * too long. The parser backtracks within the tokens read so far, so
+ * it is only stopped when it asks for the next new token. It also
+ * counts the tokens and, for the run statistics, the time spent
+ * reading them.
+ *
+ * @version $Id$
+ */
+class BudgetTokenManager
+    extends JavaParserTokenManager
+{
+    /**
+     * Thrown to the parser if the budget of a source is exceeded.
+     */
+    static class BudgetExceededException
+        extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException( String message )
+        {
+            super( message );
+        }
+    }
+
+    private int _maxTokens = 0;
+    private int _tokens = 0;
+    private boolean _bTimed = false;
+    private long _time = 0;
+    private volatile boolean _bCancelled = false;
+
+    BudgetTokenManager( JavaCharStream stream )
+    {
+        super( stream );
+    }
+
+    /**
+     * Starts the budget of the next source.
+     *
+     * @param maxTokens 0 for no limit.
+     * @param bTimed whether to measure the time reading the tokens.
+     */
+    void reset( int maxTokens, boolean bTimed )
+    {
+        _maxTokens = maxTokens;
+        _tokens = 0;
+        _bTimed = bTimed;
+        _time = 0;
+        _bCancelled = false;
+    }
+
+    int getTokens()
+    {
+        return _tokens;
+    }
+
+    /**
+     * @return the time spent reading tokens in nanoseconds, if timed.
+     */
+    long getTime()
+    {
+        return _time;
+    }
+
+    /**
+     * Stops the parser at the next token, may be called from any thread.
+     */
+    void cancel()
+    {
+        _bCancelled = true;
+    }
+
+    @Override
+    public Token getNextToken()
+    {
+        if ( _bCancelled )
+        {
+            throw new BudgetExceededException( "measurement given up" );
+        }
+        if ( ++_tokens > _maxTokens && _maxTokens > 0 )
+        {
+            throw new BudgetExceededException( "more than " + _maxTokens + " tokens" );
+        }
+        if ( !_bTimed )
+        {
+            return super.getNextToken();
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            return super.getNextToken();
+        }
+        finally
+        {
+            _time += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javancss.parser.JavaParser;
+
+/**
+ * Long running JavaNCSS process, that measures on behalf of the
+ * <code>bin/javancss-client</code> script. Starting a JVM and warming
+ * up the parser costs more than measuring a few files, so a daemon
+ * with warm classes answers repeated small runs much faster.
+ * <p>
+ * The daemon only listens on the loopback interface. It writes its
+ * port and a random token into <code>~/.javancss/daemon</code>, which
+ * only the owner can read, and refuses requests without that token.
+ * <p>
+ * A request consists of lines: the token, the working directory, the
+ * file for standard output, the file for standard error and the command
+ * line arguments, terminated by an empty line. The daemon runs the
+ * arguments exactly like <code>javancss</code> would, with the output
+ * written into the two files, and answers with the exit code. The
+ * single argument <code>-stop</code> shuts the daemon down.
+ *
+ * @version $Id$
+ */
+public class Daemon
+{
+    private static final String ENCODING = "UTF-8";
+
+    private final Logger log = Logger.getLogger( getClass().getName() );
+
+    private final ServerSocket _serverSocket;
+
+    private final String _sToken;
+
+    private final File _infoFile;
+
+    /**
+     * Binds the daemon to a free port of the loopback interface and
+     * writes the info file for the clients.
+     */
+    public Daemon( File infoFile )
+        throws IOException
+    {
+        _infoFile = infoFile;
+        _serverSocket = new ServerSocket( 0, 50, InetAddress.getByName( null ) );
+
+        byte[] random = new byte[16];
+        new SecureRandom().nextBytes( random );
+        _sToken = MeasurementCache.toHex( random );
+
+        _writeInfoFile();
+    }
+
+    /**
+     * @return the file the daemon reads its port and token from by default.
+     */
+    public static File getDefaultInfoFile()
+    {
+        return new File( new File( System.getProperty( "user.home" ), ".javancss" ), "daemon" );
+    }
+
+    public int getPort()
+    {
+        return _serverSocket.getLocalPort();
+    }
+
+    public String getToken()
+    {
+        return _sToken;
+    }
+
+    private void _writeInfoFile()
+        throws IOException
+    {
+        File directory = _infoFile.getAbsoluteFile().getParentFile();
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory: " + directory );
+        }
+
+        _infoFile.delete();
+        Files.createFile( _infoFile.toPath() );
+        try
+        {
+            Files.setPosixFilePermissions( _infoFile.toPath(), EnumSet.of( PosixFilePermission.OWNER_READ,
+                                                                          PosixFilePermission.OWNER_WRITE ) );
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            _infoFile.setReadable( false, false );
+            _infoFile.setReadable( true, true );
+        }
+
+        Writer writer = new OutputStreamWriter( new FileOutputStream( _infoFile ), ENCODING );
+        try
+        {
+            writer.write( getPort() + " " + _sToken + "\n" );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Answers requests until a client sends <code>-stop</code>.
+     * Requests are handled one after the other, as the measurement
+     * redirects the global standard streams.
+     */
+    public void run()
+    {
+        try
+        {
+            boolean bStop = false;
+            while ( !bStop )
+            {
+                Socket socket = _serverSocket.accept();
+                try
+                {
+                    bStop = _serve( socket );
+                }
+                catch ( IOException e )
+                {
+                    log.fine( "Daemon.run().e: " + e );
+                }
+                finally
+                {
+                    socket.close();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            if ( !_serverSocket.isClosed() )
+            {
+                System.err.println( "javancss: daemon stopped: " + e.getMessage() );
+            }
+        }
+        finally
+        {
+            stop();
+        }
+    }
+
+    /**
+     * Stops accepting requests and removes the info file.
+     */
+    public void stop()
+    {
+        try
+        {
+            _serverSocket.close();
+        }
+        catch ( IOException e )
+        {
+            log.fine( "Daemon.stop().e: " + e );
+        }
+        _infoFile.delete();
+    }
+
+    /**
+     * @return true if the daemon has to stop.
+     */
+    private boolean _serve( Socket socket )
+        throws IOException
+    {
+        BufferedReader in = new BufferedReader( new InputStreamReader( socket.getInputStream(), ENCODING ) );
+        String sToken = in.readLine();
+        if ( !_sToken.equals( sToken ) )
+        {
+            return false;
+        }
+
+        String sWorkingDirectory = in.readLine();
+        String sOut = in.readLine();
+        String sErr = in.readLine();
+        List<String> vArgs = new ArrayList<String>();
+        for ( String line = in.readLine(); line != null && line.length() > 0; line = in.readLine() )
+        {
+            vArgs.add( line );
+        }
+        if ( sErr == null )
+        {
+            return false;
+        }
+
+        boolean bStop = vArgs.size() == 1 && vArgs.get( 0 ).equals( "-stop" );
+        int exitCode = bStop ? 0 : measure( vArgs.toArray( new String[vArgs.size()] ),
+                                            sWorkingDirectory, new File( sOut ), new File( sErr ) );
+
+        Writer out = new OutputStreamWriter( socket.getOutputStream(), ENCODING );
+        out.write( exitCode + "\n" );
+        out.flush();
+
+        return bStop;
+    }
+
+    /**
+     * Runs JavaNCSS with the given command line arguments like
+     * {@link Main} does, but in the given working directory and with
+     * standard output and error written into the given files.
+     *
+     * @return the exit code of the run.
+     */
+    static int measure( String[] args, String sWorkingDirectory, File outFile, File errFile )
+        throws IOException
+    {
+        PrintStream out = new PrintStream( new FileOutputStream( outFile ), false );
+        PrintStream err = new PrintStream( new FileOutputStream( errFile ), true );
+
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        InputStream oldIn = System.in;
+        String sOldWorkingDirectory = System.getProperty( "user.dir" );
+        // -debug changes the level of the shared loggers
+        Logger javancssLog = Logger.getLogger( Javancss.class.getName() );
+        Level oldLevel = javancssLog.getLevel();
+        Logger parserLog = Logger.getLogger( JavaParser.class.getName() );
+        Level oldParserLevel = parserLog.getLevel();
+        try
+        {
+            System.setOut( out );
+            System.setErr( err );
+            // the client's standard input is not forwarded
+            System.setIn( new ByteArrayInputStream( new byte[0] ) );
+            System.setProperty( "user.dir", sWorkingDirectory );
+
+            for ( String arg : args )
+            {
+                if ( arg.equals( "-gui" ) )
+                {
+                    System.err.println( "javancss: -gui is not supported by the daemon" );
+                    return 1;
+                }
+            }
+
+            Javancss javancss = new Javancss( args );
+
+            return javancss.getLastErrorMessage() == null ? 0 : 1;
+        }
+        catch ( RuntimeException e )
+        {
+            e.printStackTrace( System.err );
+            return 1;
+        }
+        finally
+        {
+            System.setOut( oldOut );
+            System.setErr( oldErr );
+            System.setIn( oldIn );
+            System.setProperty( "user.dir", sOldWorkingDirectory );
+            javancssLog.setLevel( oldLevel );
+            parserLog.setLevel( oldParserLevel );
+            out.close();
+            err.close();
+        }
+    }
+
+    public static void main( String[] args )
+        throws IOException
+    {
+        final Daemon daemon = new Daemon( getDefaultInfoFile() );
+        Runtime.getRuntime().addShutdownHook( new Thread()
+        {
+            @Override
+            public void run()
+            {
+                daemon.stop();
+            }
+        } );
+        System.out.println( "JavaNCSS daemon listening on port " + daemon.getPort() );
+        daemon.run();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+package javancss;
+
+import java.io.Serializable;
+
+/**
+ * Name and position of a declaration in a source file.
+ * Instances are immutable.
+ *
+ * @version $Id$
+ */
+public abstract class DeclarationInfo
+    implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    public final String name;
+    public final int beginLine;
+    public final int beginColumn;
+    public final int endLine;
+    public final int endColumn;
+
+    DeclarationInfo( String name, int beginLine, int beginColumn, int endLine, int endColumn )
+    {
+        // the package and import names repeat across the source files,
+        // the string pool keeps each of them once without any lock
+        this.name = name == null ? null : name.intern();
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( o == null || o.getClass() != getClass() )
+        {
+            return false;
+        }
+        DeclarationInfo info = (DeclarationInfo) o;
+
+        return name.equals( info.name ) && beginLine == info.beginLine && beginColumn == info.beginColumn
+            && endLine == info.endLine && endColumn == info.endColumn;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return ( ( name.hashCode() * 31 + beginLine ) * 31 + beginColumn ) * 31 + endLine;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " [" + beginLine + ":" + beginColumn + "-" + endLine + ":" + endColumn + "]";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Basic data class to store all metrics collected while parsing
+ * a single source file, i.e. the contribution of this file to the
+ * function, object and package metrics of the whole run.
+ *
+ * @version $Id$
+ */
+public class FileMetric
+    extends Metric
+{
+    private static final long serialVersionUID = 1L;
+
+    /** Lines of code, including comments and empty lines. */
+    public int loc = 0;
+
+    public List<FunctionMetric> functionMetrics = new ArrayList<FunctionMetric>();
+    public List<ObjectMetric> objectMetrics = new ArrayList<ObjectMetric>();
+
+    /** The empty package consists of the name ".". */
+    public Map<String, PackageMetric> packageMetrics = new HashMap<String, PackageMetric>();
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        loc = 0;
+        functionMetrics.clear();
+        objectMetrics.clear();
+        packageMetrics.clear();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emits the events of a measurement to JDK Flight Recorder. Events are
+ * only created while a recording has them enabled, e.g. with
+ * <code>-XX:StartFlightRecording</code> or <code>jcmd JFR.start</code>.
+ * Needs Java 11, and is only compiled by a Java 11 or later build.
+ *
+ * @version $Id$
+ */
+class FlightRecorderEvents
+    extends MeasurementEvents
+{
+    @Name( "javancss.FileMeasured" )
+    @Label( "File Measured" )
+    @Description( "A source file read and parsed" )
+    @Category( "JavaNCSS" )
+    static class FileMeasured
+        extends Event
+    {
+        @Label( "Path" )
+        String path;
+
+        @Label( "Size" )
+        @DataAmount
+        long bytes;
+
+        @Label( "Tokens" )
+        int tokens;
+
+        @Label( "NCSS" )
+        int ncss;
+    }
+
+    @Name( "javancss.ParseFailed" )
+    @Label( "Parse Failed" )
+    @Description( "A source file which could not be read or parsed" )
+    @Category( "JavaNCSS" )
+    static class ParseFailed
+        extends Event
+    {
+        @Label( "Path" )
+        String path;
+
+        @Label( "Message" )
+        String message;
+    }
+
+    @Name( "javancss.FormatterPhase" )
+    @Label( "Formatter Phase" )
+    @Description( "Printing the package, object or function metrics" )
+    @Category( "JavaNCSS" )
+    static class FormatterPhase
+        extends Event
+    {
+        @Label( "Phase" )
+        String phase;
+    }
+
+    @Override
+    Object beginFile()
+    {
+        FileMeasured event = new FileMeasured();
+        if ( !event.isEnabled() )
+        {
+            return null;
+        }
+        event.begin();
+
+        return event;
+    }
+
+    @Override
+    void fileMeasured( Object event, String path, long bytes, int tokens, int ncss )
+    {
+        FileMeasured fileMeasured = (FileMeasured) event;
+        fileMeasured.end();
+        if ( fileMeasured.shouldCommit() )
+        {
+            fileMeasured.path = path;
+            fileMeasured.bytes = bytes;
+            fileMeasured.tokens = tokens;
+            fileMeasured.ncss = ncss;
+            fileMeasured.commit();
+        }
+    }
+
+    @Override
+    void parseFailed( String path, String message )
+    {
+        ParseFailed event = new ParseFailed();
+        if ( event.shouldCommit() )
+        {
+            event.path = path;
+            event.message = message;
+            event.commit();
+        }
+    }
+
+    @Override
+    Object beginPhase()
+    {
+        FormatterPhase event = new FormatterPhase();
+        if ( !event.isEnabled() )
+        {
+            return null;
+        }
+        event.begin();
+
+        return event;
+    }
+
+    @Override
+    void phaseFinished( Object event, String phase )
+    {
+        FormatterPhase formatterPhase = (FormatterPhase) event;
+        formatterPhase.end();
+        if ( formatterPhase.shouldCommit() )
+        {
+            formatterPhase.phase = phase;
+            formatterPhase.commit();
+        }
+    }
+}
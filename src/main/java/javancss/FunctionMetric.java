@@ -29,6 +29,8 @@ package javancss;
 public class FunctionMetric
     extends Metric
 {
+    private static final long serialVersionUID = 1L;
+
     public int ccn = 0;
 
     @Override
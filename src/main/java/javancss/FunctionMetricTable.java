@@ -0,0 +1,258 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+package javancss;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact list of function metrics for very large code bases. Every
+ * metric is kept in an int array of its own instead of a FunctionMetric
+ * object per function. The function names are split into the name of
+ * the class and the signature, both are stored only once in a dictionary.
+ * <p>
+ * Each element read from the table is a new FunctionMetric, so the
+ * elements may be kept like the ones of any other list. Code reading
+ * every function, like the formatters, should use the column
+ * accessors instead, which create nothing but the name.
+ *
+ * @version $Id$
+ */
+class FunctionMetricTable
+    extends AbstractList<FunctionMetric>
+    implements RandomAccess
+{
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int _size = 0;
+
+    private int[] _prefixes = new int[INITIAL_CAPACITY];
+    private int[] _signatures = new int[INITIAL_CAPACITY];
+    private int[] _ncss = new int[INITIAL_CAPACITY];
+    private int[] _ccn = new int[INITIAL_CAPACITY];
+    private int[] _firstLine = new int[INITIAL_CAPACITY];
+    private int[] _javadocs = new int[INITIAL_CAPACITY];
+    private int[] _javadocsLn = new int[INITIAL_CAPACITY];
+    private int[] _singleLn = new int[INITIAL_CAPACITY];
+    private int[] _multiLn = new int[INITIAL_CAPACITY];
+
+    /** Class names and signatures, indexed by their id. */
+    private final List<String> _names = new ArrayList<String>();
+
+    /**
+     * Open addressing hash table of the ids of the names, -1 marks a
+     * free slot. It is kept at most half full.
+     */
+    private int[] _nameSlots = _newSlots( INITIAL_CAPACITY );
+
+    @Override
+    public boolean add( FunctionMetric functionMetric )
+    {
+        if ( _size == _ncss.length )
+        {
+            _grow();
+        }
+
+        // "package.Class.method(Parameters)": the class name is shared
+        // by all methods of the class, signatures like "toString()" by
+        // many classes
+        String name = functionMetric.name;
+        int parameters = name.indexOf( '(' );
+        int dot = name.lastIndexOf( '.', parameters < 0 ? name.length() : parameters );
+        _prefixes[_size] = dot < 0 ? -1 : _nameId( name.substring( 0, dot ) );
+        _signatures[_size] = _nameId( name.substring( dot + 1 ) );
+
+        _ncss[_size] = functionMetric.ncss;
+        _ccn[_size] = functionMetric.ccn;
+        _firstLine[_size] = functionMetric.firstLine;
+        _javadocs[_size] = functionMetric.javadocs;
+        _javadocsLn[_size] = functionMetric.javadocsLn;
+        _singleLn[_size] = functionMetric.singleLn;
+        _multiLn[_size] = functionMetric.multiLn;
+        _size++;
+        modCount++;
+
+        return true;
+    }
+
+    @Override
+    public FunctionMetric get( int index )
+    {
+        FunctionMetric functionMetric = new FunctionMetric();
+        functionMetric.name = getName( index );
+        functionMetric.ncss = _ncss[index];
+        functionMetric.ccn = _ccn[index];
+        functionMetric.firstLine = _firstLine[index];
+        functionMetric.javadocs = _javadocs[index];
+        functionMetric.javadocsLn = _javadocsLn[index];
+        functionMetric.singleLn = _singleLn[index];
+        functionMetric.multiLn = _multiLn[index];
+
+        return functionMetric;
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public void clear()
+    {
+        _size = 0;
+        _names.clear();
+        _nameSlots = _newSlots( INITIAL_CAPACITY );
+        modCount++;
+    }
+
+    /**
+     * @return the name of the function at the given index, the only
+     *         column which is not stored as is.
+     */
+    public String getName( int index )
+    {
+        _checkIndex( index );
+        int prefix = _prefixes[index];
+        String signature = _names.get( _signatures[index] );
+
+        return prefix < 0 ? signature : _names.get( prefix ) + '.' + signature;
+    }
+
+    public int getNcss( int index )
+    {
+        _checkIndex( index );
+        return _ncss[index];
+    }
+
+    public int getCcn( int index )
+    {
+        _checkIndex( index );
+        return _ccn[index];
+    }
+
+    public int getFirstLine( int index )
+    {
+        _checkIndex( index );
+        return _firstLine[index];
+    }
+
+    public int getJavadocs( int index )
+    {
+        _checkIndex( index );
+        return _javadocs[index];
+    }
+
+    public int getJavadocsLn( int index )
+    {
+        _checkIndex( index );
+        return _javadocsLn[index];
+    }
+
+    public int getSingleLn( int index )
+    {
+        _checkIndex( index );
+        return _singleLn[index];
+    }
+
+    public int getMultiLn( int index )
+    {
+        _checkIndex( index );
+        return _multiLn[index];
+    }
+
+    private void _checkIndex( int index )
+    {
+        if ( index < 0 || index >= _size )
+        {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + _size );
+        }
+    }
+
+    private int _nameId( String name )
+    {
+        int slot = _slot( _nameSlots, name );
+        int id = _nameSlots[slot];
+        if ( id < 0 )
+        {
+            id = _names.size();
+            _names.add( name );
+            _nameSlots[slot] = id;
+            if ( _names.size() * 2 > _nameSlots.length )
+            {
+                _rehash();
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * @return the slot holding the id of the given name, or the free
+     *         slot where it belongs.
+     */
+    private int _slot( int[] slots, String name )
+    {
+        int mask = slots.length - 1;
+        int hash = name.hashCode();
+        int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+        while ( slots[slot] >= 0 && !_names.get( slots[slot] ).equals( name ) )
+        {
+            slot = ( slot + 1 ) & mask;
+        }
+
+        return slot;
+    }
+
+    private void _rehash()
+    {
+        int[] slots = _newSlots( _nameSlots.length * 2 );
+        for ( int id = 0; id < _names.size(); id++ )
+        {
+            slots[_slot( slots, _names.get( id ) )] = id;
+        }
+        _nameSlots = slots;
+    }
+
+    private static int[] _newSlots( int capacity )
+    {
+        int[] slots = new int[capacity];
+        Arrays.fill( slots, -1 );
+
+        return slots;
+    }
+
+    private void _grow()
+    {
+        int capacity = _ncss.length * 2;
+        _prefixes = Arrays.copyOf( _prefixes, capacity );
+        _signatures = Arrays.copyOf( _signatures, capacity );
+        _ncss = Arrays.copyOf( _ncss, capacity );
+        _ccn = Arrays.copyOf( _ccn, capacity );
+        _firstLine = Arrays.copyOf( _firstLine, capacity );
+        _javadocs = Arrays.copyOf( _javadocs, capacity );
+        _javadocsLn = Arrays.copyOf( _javadocsLn, capacity );
+        _singleLn = Arrays.copyOf( _singleLn, capacity );
+        _multiLn = Arrays.copyOf( _multiLn, capacity );
+    }
+}
@@ -0,0 +1,262 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Java source files changed in a git working tree since a given
+ * revision, as listed by <code>git diff --name-status</code>.
+ *
+ * @version $Id$
+ */
+class GitChanges
+{
+    /**
+     * A changed source file, with its path relative to the top of the
+     * working tree in the revision and now. One of them is null for
+     * added and deleted files.
+     */
+    static class Change
+    {
+        final String previousPath;
+        final String currentPath;
+
+        Change( String previousPath, String currentPath )
+        {
+            this.previousPath = previousPath;
+            this.currentPath = currentPath;
+        }
+    }
+
+    private final File _topLevel;
+
+    private final String _sRevision;
+
+    private final List<Change> _vChanges = new ArrayList<Change>();
+
+    /**
+     * @param directory a directory in the working tree.
+     * @param revision the revision the old versions are taken from.
+     */
+    GitChanges( File directory, String revision )
+        throws IOException
+    {
+        _sRevision = revision;
+        _topLevel = new File( new String( git( directory, "rev-parse", "--show-toplevel" ), "UTF-8" ).trim() );
+    }
+
+    File getTopLevel()
+    {
+        return _topLevel;
+    }
+
+    List<Change> getChanges()
+    {
+        return _vChanges;
+    }
+
+    /**
+     * Asks git for the files changed since the revision.
+     */
+    void readDiff()
+        throws IOException
+    {
+        byte[] diff = git( _topLevel, "diff", "--name-status", "--no-renames", _sRevision, "--" );
+        read( new StringReader( new String( diff, "UTF-8" ) ) );
+    }
+
+    /**
+     * Reads the output of <code>git diff --name-status</code>, only
+     * Java source files are kept.
+     */
+    void read( Reader nameStatus )
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader( nameStatus );
+        for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+        {
+            String[] fields = line.split( "\t" );
+            if ( line.trim().length() == 0 || fields.length < 2 )
+            {
+                continue;
+            }
+
+            char status = fields[0].charAt( 0 );
+            String path = _unquote( fields[1] );
+            String newPath = fields.length > 2 ? _unquote( fields[2] ) : null;
+            switch ( status )
+            {
+                case 'A':
+                    _add( null, path );
+                    break;
+                case 'D':
+                    _add( path, null );
+                    break;
+                case 'R':
+                    _add( path, newPath );
+                    break;
+                case 'C':
+                    _add( null, newPath );
+                    break;
+                default:
+                    // modified, type changed or unmerged
+                    _add( path, path );
+            }
+        }
+    }
+
+    private void _add( String previousPath, String currentPath )
+    {
+        boolean previous = previousPath != null && previousPath.endsWith( ".java" );
+        boolean current = currentPath != null && currentPath.endsWith( ".java" );
+        if ( previous || current )
+        {
+            _vChanges.add( new Change( previous ? previousPath : null, current ? currentPath : null ) );
+        }
+    }
+
+    /**
+     * git quotes paths with unusual characters, non-ASCII bytes as
+     * octal escapes.
+     */
+    private static String _unquote( String path )
+        throws IOException
+    {
+        if ( !path.startsWith( "\"" ) || !path.endsWith( "\"" ) || path.length() < 2 )
+        {
+            return path;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for ( int i = 1; i < path.length() - 1; i++ )
+        {
+            char c = path.charAt( i );
+            if ( c != '\\' || i + 1 >= path.length() - 1 )
+            {
+                bytes.write( String.valueOf( c ).getBytes( "UTF-8" ) );
+                continue;
+            }
+
+            c = path.charAt( ++i );
+            if ( c >= '0' && c <= '7' && i + 2 < path.length() - 1 )
+            {
+                bytes.write( Integer.parseInt( path.substring( i, i + 3 ), 8 ) );
+                i += 2;
+            }
+            else
+            {
+                bytes.write( c == 't' ? '\t' : c == 'n' ? '\n' : c );
+            }
+        }
+
+        return bytes.toString( "UTF-8" );
+    }
+
+    /**
+     * @return the file in the working tree.
+     */
+    File getFile( String path )
+    {
+        return new File( _topLevel, path.replace( '/', File.separatorChar ) );
+    }
+
+    /**
+     * Writes the version of the revision of a file into the given
+     * directory, under the same relative path.
+     *
+     * @return the written file.
+     */
+    File checkout( String path, File directory )
+        throws IOException
+    {
+        File file = new File( directory, path.replace( '/', File.separatorChar ) );
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( git( _topLevel, "show", _sRevision + ":" + path ) );
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * Runs git and returns its output. Error messages of git go to the
+     * standard error output.
+     */
+    static byte[] git( File directory, String... args )
+        throws IOException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add( "git" );
+        command.addAll( Arrays.asList( args ) );
+        Process process = new ProcessBuilder( command ).directory( directory )
+            .redirectError( ProcessBuilder.Redirect.INHERIT ).start();
+        process.getOutputStream().close();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream in = process.getInputStream();
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( ( read = in.read( buffer ) ) != -1 )
+            {
+                output.write( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        try
+        {
+            if ( process.waitFor() != 0 )
+            {
+                throw new IOException( "Command failed: " + command );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted: " + command );
+        }
+
+        return output.toByteArray();
+    }
+}
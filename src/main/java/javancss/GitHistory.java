@@ -0,0 +1,388 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the history of a git repository, commit by commit. The
+ * source files are read from the object store without checking the
+ * commits out. Each file version (blob) is only measured once and its
+ * results are used again for all commits containing it, so the time
+ * depends on the number of different file versions instead of the
+ * number of commits times the number of files.
+ *
+ * @version $Id$
+ */
+class GitHistory
+{
+    /**
+     * What is kept of the metrics of a blob.
+     */
+    private static class BlobMetric
+    {
+        private int ncss = 0;
+        private int ccn = 0;
+        private int functions = 0;
+        private boolean failed = false;
+        private List<PackageMetric> packageMetrics = Collections.emptyList();
+    }
+
+    private final File _directory;
+
+    private final String _encoding;
+
+    private final int _threads;
+
+    /** Number of blobs read and measured at once. */
+    private static final int BATCH_SIZE = 1000;
+
+    private final Map<String, BlobMetric> _htBlobs = new HashMap<String, BlobMetric>();
+
+    /**
+     * @param directory the working directory, paths are relative to it.
+     */
+    GitHistory( File directory, String encoding, int threads )
+    {
+        _directory = directory;
+        _encoding = encoding;
+        _threads = threads;
+    }
+
+    /**
+     * @return the number of file versions measured so far.
+     */
+    int getMeasuredBlobs()
+    {
+        return _htBlobs.size();
+    }
+
+    /**
+     * Measures the last commits up to the given revision, following
+     * only the first parent of merges, and prints the results of each
+     * commit, the oldest first.
+     *
+     * @param paths only source files in these paths are measured,
+     *              all if empty.
+     */
+    void print( Writer w, String revision, int commits, List<String> paths, boolean bXML, boolean bPackages )
+        throws IOException
+    {
+        String log = new String( GitChanges.git( _directory, "log", "--first-parent", "--max-count=" + commits,
+                                                 "--format=%H %cI", revision, "--" ), "UTF-8" );
+        List<String> vCommits = new ArrayList<String>();
+        for ( String line : log.split( "\n" ) )
+        {
+            if ( line.trim().length() > 0 )
+            {
+                vCommits.add( line.trim() );
+            }
+        }
+        Collections.reverse( vCommits );
+
+        BlobReader reader = new BlobReader( _directory );
+        try
+        {
+            if ( bXML )
+            {
+                w.write( "<?xml version=\"1.0\"?>\n<javancss_history>\n" );
+            }
+            else
+            {
+                w.write( "Commit    Date                           Files        NCSS         CCN   Functions\n" );
+            }
+            for ( String commit : vCommits )
+            {
+                String[] fields = commit.split( " " );
+                _printCommit( w, fields[0], fields.length > 1 ? fields[1] : "", paths, reader, bXML, bPackages );
+                w.flush();
+            }
+            if ( bXML )
+            {
+                w.write( "</javancss_history>\n" );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private void _printCommit( Writer w, String commit, String date, List<String> paths, BlobReader reader,
+                               boolean bXML, boolean bPackages )
+        throws IOException
+    {
+        // path and blob hash of the source files of the commit
+        List<String> command = new ArrayList<String>();
+        Collections.addAll( command, "ls-tree", "-r", "-z", commit, "--" );
+        command.addAll( paths );
+        String tree = new String( GitChanges.git( _directory, command.toArray( new String[command.size()] ) ), "UTF-8" );
+        Map<String, String> htFiles = new LinkedHashMap<String, String>();
+        for ( String entry : tree.split( "\0" ) )
+        {
+            // <mode> SP <type> SP <object> TAB <file>
+            int tab = entry.indexOf( '\t' );
+            String[] fields = entry.substring( 0, Math.max( tab, 0 ) ).split( " " );
+            if ( tab > 0 && fields.length == 3 && fields[1].equals( "blob" ) && entry.endsWith( ".java" ) )
+            {
+                htFiles.put( entry.substring( tab + 1 ), fields[2] );
+            }
+        }
+
+        _measureBlobs( htFiles, commit, reader );
+
+        int ncss = 0;
+        int ccn = 0;
+        int functions = 0;
+        int errors = 0;
+        Map<String, PackageMetric> htPackages = new HashMap<String, PackageMetric>();
+        for ( String blob : htFiles.values() )
+        {
+            BlobMetric blobMetric = _htBlobs.get( blob );
+            ncss += blobMetric.ncss;
+            ccn += blobMetric.ccn;
+            functions += blobMetric.functions;
+            if ( blobMetric.failed )
+            {
+                errors++;
+            }
+            for ( PackageMetric packageMetric : blobMetric.packageMetrics )
+            {
+                PackageMetric total = htPackages.get( packageMetric.name );
+                if ( total == null )
+                {
+                    total = new PackageMetric();
+                    total.name = packageMetric.name;
+                    htPackages.put( total.name, total );
+                }
+                total.add( packageMetric );
+            }
+        }
+        List<PackageMetric> vPackages = new ArrayList<PackageMetric>( htPackages.values() );
+        Collections.sort( vPackages );
+
+        if ( bXML )
+        {
+            w.write( "  <commit>\n"
+                     + "    <id>" + commit + "</id>\n"
+                     + "    <date>" + date + "</date>\n"
+                     + "    <files>" + htFiles.size() + "</files>\n"
+                     + "    <parse_errors>" + errors + "</parse_errors>\n"
+                     + "    <ncss>" + ncss + "</ncss>\n"
+                     + "    <ccn>" + ccn + "</ccn>\n"
+                     + "    <functions>" + functions + "</functions>\n" );
+            if ( bPackages )
+            {
+                for ( PackageMetric packageMetric : vPackages )
+                {
+                    w.write( "    <package>\n"
+                             + "      <name>" + packageMetric.name + "</name>\n"
+                             + "      <classes>" + packageMetric.classes + "</classes>\n"
+                             + "      <functions>" + packageMetric.functions + "</functions>\n"
+                             + "      <ncss>" + packageMetric.ncss + "</ncss>\n"
+                             + "      <javadocs>" + packageMetric.javadocs + "</javadocs>\n"
+                             + "      <javadoc_lines>" + packageMetric.javadocsLn + "</javadoc_lines>\n"
+                             + "      <single_comment_lines>" + packageMetric.singleLn + "</single_comment_lines>\n"
+                             + "      <multi_comment_lines>" + packageMetric.multiLn + "</multi_comment_lines>\n"
+                             + "    </package>\n" );
+                }
+            }
+            w.write( "  </commit>\n" );
+        }
+        else
+        {
+            w.write( String.format( "%-8.8s  %-25s %10d  %10d  %10d  %10d\n", commit, date, htFiles.size(), ncss, ccn,
+                                    functions ) );
+            if ( bPackages )
+            {
+                for ( PackageMetric packageMetric : vPackages )
+                {
+                    w.write( String.format( "          %-25s %10d  %10d  %10s  %10d  %s\n", "", packageMetric.classes,
+                                            packageMetric.ncss, "", packageMetric.functions, packageMetric.name ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the blobs not measured before. They are read and
+     * measured in batches, to limit the memory needed for the content.
+     */
+    private void _measureBlobs( Map<String, String> htFiles, String commit, BlobReader reader )
+        throws IOException
+    {
+        Map<String, String> htBlobsByName = new HashMap<String, String>();
+        List<File> vSources = new ArrayList<File>();
+        for ( Map.Entry<String, String> file : htFiles.entrySet() )
+        {
+            String blob = file.getValue();
+            if ( !_htBlobs.containsKey( blob ) )
+            {
+                // the same content might be in other files of the commit
+                _htBlobs.put( blob, null );
+
+                File source = new ArchiveEntry( new File( _directory, file.getKey() ).getPath() + "@"
+                                                + commit.substring( 0, Math.min( 8, commit.length() ) ),
+                                                reader.read( blob ) );
+                htBlobsByName.put( source.getPath(), blob );
+                vSources.add( source );
+                if ( vSources.size() >= BATCH_SIZE )
+                {
+                    _measure( vSources, htBlobsByName );
+                    vSources.clear();
+                    htBlobsByName.clear();
+                }
+            }
+        }
+        _measure( vSources, htBlobsByName );
+    }
+
+    private void _measure( List<File> vSources, final Map<String, String> htBlobsByName )
+    {
+        if ( vSources.isEmpty() )
+        {
+            return;
+        }
+
+        Javancss javancss = new Javancss();
+        javancss.setEncoding( _encoding );
+        javancss.setThreads( _threads );
+        javancss.setReuseParsers( true );
+        javancss.setKeepMetrics( false );
+        javancss.addMetricsListener( new MetricsAdapter()
+        {
+            @Override
+            public void fileFinished( FileMetric fileMetric )
+            {
+                BlobMetric blobMetric = new BlobMetric();
+                blobMetric.ncss = fileMetric.ncss;
+                for ( FunctionMetric functionMetric : fileMetric.functionMetrics )
+                {
+                    blobMetric.ccn += functionMetric.ccn;
+                    blobMetric.functions++;
+                }
+                blobMetric.packageMetrics = new ArrayList<PackageMetric>( fileMetric.packageMetrics.values() );
+                _htBlobs.put( htBlobsByName.get( fileMetric.name ), blobMetric );
+            }
+
+            @Override
+            public void fileFailed( File file, String message, Throwable error )
+            {
+                BlobMetric blobMetric = new BlobMetric();
+                blobMetric.failed = true;
+                _htBlobs.put( htBlobsByName.get( file.getPath() ), blobMetric );
+                System.err.println( message );
+            }
+        } );
+        javancss.measure( vSources );
+    }
+
+    /**
+     * Reads blobs with one "git cat-file --batch" process.
+     */
+    private static class BlobReader
+    {
+        private final Process _process;
+        private final OutputStream _out;
+        private final InputStream _in;
+
+        BlobReader( File directory )
+            throws IOException
+        {
+            _process = new ProcessBuilder( "git", "cat-file", "--batch" ).directory( directory )
+                .redirectError( ProcessBuilder.Redirect.INHERIT ).start();
+            _out = _process.getOutputStream();
+            _in = new BufferedInputStream( _process.getInputStream() );
+        }
+
+        byte[] read( String blob )
+            throws IOException
+        {
+            _out.write( ( blob + "\n" ).getBytes( "UTF-8" ) );
+            _out.flush();
+
+            // <object> SP <type> SP <size> LF <contents> LF
+            String header = _readLine();
+            String[] fields = header.split( " " );
+            if ( fields.length != 3 || !fields[1].equals( "blob" ) )
+            {
+                throw new IOException( "Cannot read blob " + blob + " from git: " + header );
+            }
+            byte[] content = new byte[Integer.parseInt( fields[2] )];
+            int read = 0;
+            while ( read < content.length )
+            {
+                int n = _in.read( content, read, content.length - read );
+                if ( n < 0 )
+                {
+                    throw new IOException( "Unexpected end of blob " + blob );
+                }
+                read += n;
+            }
+            _in.read();
+
+            return content;
+        }
+
+        private String _readLine()
+            throws IOException
+        {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            for ( int c = _in.read(); c != '\n'; c = _in.read() )
+            {
+                if ( c < 0 )
+                {
+                    throw new IOException( "git cat-file stopped" );
+                }
+                line.write( c );
+            }
+
+            return line.toString( "UTF-8" );
+        }
+
+        void close()
+            throws IOException
+        {
+            _out.close();
+            _in.close();
+            try
+            {
+                _process.waitFor();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javancss.parser.ParserTraceListener;
+import javancss.parser.Token;
+
+/**
+ * Where the parser spends its time deciding, per LOOKAHEAD of the
+ * grammar, summed up over all source files of a run.
+ * <p>
+ * The grammar tells its trace listener about each choice it makes
+ * with LOOKAHEADs. A site is one LOOKAHEAD, named after its
+ * production and numbered from 1 in the order of the grammar, like
+ * "ClassBodyDeclaration:3". When the parser tries several sites of a
+ * choice one after the other, each of them is evaluated, but only the
+ * last one decides. The decision gets the tokens scanned by its last
+ * LOOKAHEAD and the time of all LOOKAHEADs tried, including the
+ * overhead of the listener, so the times are only good to compare
+ * sites with each other. The counts of a production are those of its
+ * sites. All times are in nanoseconds.
+ *
+ * @version $Id$
+ */
+public class GrammarProfile
+{
+    /**
+     * Counts of one LOOKAHEAD site or production.
+     */
+    public static class Counters
+    {
+        private long _evaluations = 0;
+        private long _failures = 0;
+        private long _decisions = 0;
+        private long _tokens = 0;
+        private long _time = 0;
+
+        private void add( Counters counters )
+        {
+            _evaluations += counters._evaluations;
+            _failures += counters._failures;
+            _decisions += counters._decisions;
+            _tokens += counters._tokens;
+            _time += counters._time;
+        }
+
+        /**
+         * @return how often the LOOKAHEAD was tried.
+         */
+        public long getEvaluations()
+        {
+            return _evaluations;
+        }
+
+        /**
+         * @return how often the LOOKAHEAD did not match, i.e. the
+         *         tokens were scanned in vain.
+         */
+        public long getFailures()
+        {
+            return _failures;
+        }
+
+        /**
+         * @return how often the LOOKAHEAD was the last one tried for a
+         *         choice.
+         */
+        public long getDecisions()
+        {
+            return _decisions;
+        }
+
+        /**
+         * @return the tokens scanned by the LOOKAHEAD when it decided.
+         */
+        public long getTokens()
+        {
+            return _tokens;
+        }
+
+        /**
+         * @return the time of the choices the LOOKAHEAD decided.
+         */
+        public long getTime()
+        {
+            return _time;
+        }
+    }
+
+    private static final Comparator<Map.Entry<String, Counters>> BY_TIME = new Comparator<Map.Entry<String, Counters>>()
+    {
+        public int compare( Map.Entry<String, Counters> entry1, Map.Entry<String, Counters> entry2 )
+        {
+            int result = Long.compare( entry2.getValue()._time, entry1.getValue()._time );
+
+            return result != 0 ? result : entry1.getKey().compareTo( entry2.getKey() );
+        }
+    };
+
+    /**
+     * Counts the LOOKAHEADs of one parser while it parses a file,
+     * and passes its events on.
+     */
+    static class Recorder
+        implements ParserTraceListener
+    {
+        private final ParserTraceListener _next;
+
+        private long _start = 0;
+
+        private final Map<String, Counters> _sites = new HashMap<String, Counters>();
+
+        Recorder( ParserTraceListener next )
+        {
+            _next = next;
+        }
+
+        public void event( String event, Token token )
+        {
+            _next.event( event, token );
+        }
+
+        public void lookaheadStarted()
+        {
+            _start = System.nanoTime();
+            _next.lookaheadStarted();
+        }
+
+        public void lookahead( String production, int first, int last, boolean matched, Token token, Token scanned )
+        {
+            lookahead( production, first, last, matched, _distance( token, scanned ), System.nanoTime() - _start );
+            _next.lookahead( production, first, last, matched, token, scanned );
+        }
+
+        void lookahead( String production, int first, int last, boolean matched, long tokens, long time )
+        {
+            for ( int site = first; site <= last; site++ )
+            {
+                Counters counters = _counters( production + ":" + site );
+                counters._evaluations++;
+                if ( site < last || !matched )
+                {
+                    counters._failures++;
+                }
+                if ( site == last )
+                {
+                    counters._decisions++;
+                    counters._tokens += tokens;
+                    counters._time += time;
+                }
+            }
+        }
+
+        private Counters _counters( String site )
+        {
+            Counters counters = _sites.get( site );
+            if ( counters == null )
+            {
+                counters = new Counters();
+                _sites.put( site, counters );
+            }
+
+            return counters;
+        }
+
+        /**
+         * @return the tokens from the last one consumed to the last
+         *         one scanned.
+         */
+        private static long _distance( Token token, Token scanned )
+        {
+            long tokens = 0;
+            if ( scanned != null )
+            {
+                for ( Token next = token; next != null && next != scanned; next = next.next )
+                {
+                    tokens++;
+                }
+            }
+
+            return tokens;
+        }
+    }
+
+    private int _files = 0;
+
+    private final Map<String, Counters> _sites = new HashMap<String, Counters>();
+
+    /**
+     * @param next the listener the events of the parser are passed on to.
+     * @return a listener recording the LOOKAHEADs of one parser for
+     *         one file, to be added to this profile afterwards.
+     */
+    Recorder newRecorder( ParserTraceListener next )
+    {
+        return new Recorder( next == null ? ParserTraceListener.NONE : next );
+    }
+
+    /**
+     * Adds the counts of a file, also if the parser stopped with an
+     * exception.
+     */
+    synchronized void add( Recorder recorder )
+    {
+        _files++;
+        _add( _sites, recorder._sites );
+    }
+
+    private static void _add( Map<String, Counters> counters, Map<String, Counters> moreCounters )
+    {
+        for ( Map.Entry<String, Counters> entry : moreCounters.entrySet() )
+        {
+            _add( counters, entry.getKey(), entry.getValue() );
+        }
+    }
+
+    private static void _add( Map<String, Counters> counters, String name, Counters more )
+    {
+        Counters counter = counters.get( name );
+        if ( counter == null )
+        {
+            counter = new Counters();
+            counters.put( name, counter );
+        }
+        counter.add( more );
+    }
+
+    public synchronized int getFiles()
+    {
+        return _files;
+    }
+
+    /**
+     * @return the counts of the LOOKAHEAD sites by their name, e.g.
+     *         "ClassBodyDeclaration:3".
+     */
+    public synchronized Map<String, Counters> getSites()
+    {
+        return Collections.unmodifiableMap( new HashMap<String, Counters>( _sites ) );
+    }
+
+    /**
+     * @return the counts of the sites of each production by the name
+     *         of the production.
+     */
+    public synchronized Map<String, Counters> getProductions()
+    {
+        Map<String, Counters> productions = new HashMap<String, Counters>();
+        for ( Map.Entry<String, Counters> entry : _sites.entrySet() )
+        {
+            String site = entry.getKey();
+            _add( productions, site.substring( 0, site.lastIndexOf( ':' ) ), entry.getValue() );
+        }
+
+        return Collections.unmodifiableMap( productions );
+    }
+
+    /**
+     * Prints the report, the most expensive sites first.
+     */
+    public synchronized void print( PrintWriter pw )
+    {
+        pw.println( "Grammar profile of " + _files + " files" );
+
+        pw.println();
+        pw.println( "Lookahead sites:" );
+        _print( pw, _sites, "Site" );
+
+        pw.println();
+        pw.println( "Productions:" );
+        _print( pw, getProductions(), "Production" );
+        pw.flush();
+    }
+
+    private static void _print( PrintWriter pw, Map<String, Counters> counters, String title )
+    {
+        pw.println( "  Evaluated     Failed  Decisions     Tokens    Time ms  " + title );
+        for ( Map.Entry<String, Counters> entry : _sorted( counters ) )
+        {
+            Counters counter = entry.getValue();
+            pw.println( _column( counter._evaluations ) + _column( counter._failures ) + _column( counter._decisions )
+                        + _column( counter._tokens ) + _time( counter._time ) + "  " + entry.getKey() );
+        }
+    }
+
+    private static List<Map.Entry<String, Counters>> _sorted( Map<String, Counters> counters )
+    {
+        List<Map.Entry<String, Counters>> entries = new ArrayList<Map.Entry<String, Counters>>( counters.entrySet() );
+        Collections.sort( entries, BY_TIME );
+
+        return entries;
+    }
+
+    private static String _column( long value )
+    {
+        return String.format( "%11d", value );
+    }
+
+    private static String _time( long nanos )
+    {
+        return String.format( Locale.US, "%11.2f", nanos / 1000000.0 );
+    }
+}
@@ -20,16 +20,31 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
 
 package javancss;
 
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,13 +55,12 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import javancss.parser.JavaCharStream;
 import javancss.parser.JavaParser;
-import javancss.parser.JavaParserDebug;
 import javancss.parser.JavaParserInterface;
-import javancss.parser.JavaParserTokenManager;
-import javancss.parser.TokenMgrError;
-
-import javax.swing.*;
+import javancss.parser.LoggingTraceListener;
+import javancss.parser.NcssScanner;
+import javancss.parser.ParserTraceListener;
 
 /**
  * While the Java parser class might be the heart of JavaNCSS,
@@ -64,10 +78,12 @@ public class Javancss
     private Logger log = Logger.getLogger( getClass().getName() );
 
     private static final String DEFAULT_ENCODING = null;
+
+    private static final ParserTraceListener TRACE_LISTENER = new LoggingTraceListener();
     
     private boolean exit = false;
 
-    private List<File> _vJavaSourceFiles = null;
+    private Iterable<File> _vJavaSourceFiles = null;
     private String encoding = DEFAULT_ENCODING;
 
     private String _sErrorMessage = null;
@@ -79,9 +95,44 @@ public class Javancss
     private List<FunctionMetric> _vFunctionMetrics = new ArrayList<FunctionMetric>();
     private List<ObjectMetric> _vObjectMetrics = new ArrayList<ObjectMetric>();
     private List<PackageMetric> _vPackageMetrics = null;
-    private List<Object[]> _vImports = null;
+    private List<ImportInfo> _vImports = null;
     private Map<String,PackageMetric> _htPackages = null;
-    private Object[] _aoPackage = null;
+    private PackageInfo _packageInfo = null;
+    private FileMetric _lastFileMetric = null;
+
+    /**
+     * Number of threads used to parse the source files.
+     */
+    private int _threads = 1;
+
+    private File _cacheDirectory = null;
+    private MeasurementCache _cache = null;
+
+    /**
+     * Summaries of the source files measured so far by the SHA-1 of
+     * their content, to not parse identical copies of a file again.
+     */
+    private final Map<String, ContentSummary> _htContents = new ConcurrentHashMap<String, ContentSummary>();
+    private boolean _bDeduplicate = false;
+    private int _duplicateFiles = 0;
+    private long _duplicateBytes = 0;
+
+    private int _parseTimeout = 0;
+    private int _maxTokens = 0;
+    private ExecutorService _timeoutExecutor = null;
+
+    private boolean _bStatistics = false;
+    private RunStatistics _statistics = null;
+
+    private File _grammarProfileFile = null;
+    private GrammarProfile _grammarProfile = null;
+
+    private boolean _bStreaming = false;
+    private boolean _bKeepMetrics = true;
+    private boolean _bFast = false;
+    private boolean _bReuseParsers = false;
+    private StreamingXmlFormatter _streamingFormatter = null;
+    private final List<MetricsListener> _vMetricsListeners = new ArrayList<MetricsListener>();
 
     /**
      * Just used for parseImports.
@@ -111,202 +162,1056 @@ public class Javancss
         }
     }
 
-    private void _measureSource( File sSourceFile_ )
+    private JavaParserInterface _newParser( Reader reader )
+    {
+        log.fine( "creating JavaParser" );
+        JavaParserInterface parser = new JavaParser( reader );
+        parser.setTraceListener( _traceListener() );
+
+        return parser;
+    }
+
+    /**
+     * Creates a parser for a source which has already been decoded
+     * completely. The parser reads it through its buffer of the
+     * default size, a buffer as large as the source would cost about
+     * ten bytes per character for the line and column tables.
+     */
+    private JavaParserInterface _newParser( CharBuffer source )
+    {
+        JavaParserInterface parser;
+        if ( _bReuseParsers )
+        {
+            parser = ParserPool.getParser( source );
+        }
+        else
+        {
+            log.fine( "creating JavaParser" );
+            parser = new JavaParser( new BudgetTokenManager( _newStream( source ) ) );
+        }
+        parser.setTraceListener( _traceListener() );
+
+        return parser;
+    }
+
+    /**
+     * The parser only tells what it does in debug mode.
+     */
+    private ParserTraceListener _traceListener()
+    {
+        return log.isLoggable( Level.FINE ) ? TRACE_LISTENER : ParserTraceListener.NONE;
+    }
+
+    /**
+     * @return a reader of the decoded source, without copying it.
+     */
+    static Reader newReader( CharBuffer source )
+    {
+        return new CharArrayReader( source.array(), source.arrayOffset() + source.position(), source.remaining() );
+    }
+
+    private static JavaCharStream _newStream( CharBuffer source )
+    {
+        Reader reader = newReader( source );
+
+        return new JavaCharStream( reader, 1, 1 );
+    }
+
+    /**
+     * Runs the given scanner and collects its results. There are
+     * no function, object and package metrics.
+     */
+    private static FileMetric _scanSource( NcssScanner scanner )
+        throws Exception, Error
+    {
+        scanner.scan();
+
+        FileMetric fileMetric = new FileMetric();
+        fileMetric.ncss = scanner.getNcss();
+        fileMetric.loc = scanner.getLOC();
+        fileMetric.javadocs = scanner.getJvdc();
+        fileMetric.javadocsLn = scanner.getJdcl();
+        fileMetric.singleLn = scanner.getSl();
+        fileMetric.multiLn = scanner.getMl();
+
+        return fileMetric;
+    }
+
+    /**
+     * Runs the given parser and collects its results. Only the
+     * parser and the returned object are touched, so this may be
+     * called for several parsers at the same time.
+     */
+    private FileMetric _parseSource( JavaParserInterface parser )
         throws Exception, Error
     {
-        Reader reader;
+        // execute the parser
+        if ( _grammarProfile == null )
+        {
+            parser.parse();
+        }
+        else
+        {
+            GrammarProfile.Recorder recorder = _grammarProfile.newRecorder( _traceListener() );
+            parser.setTraceListener( recorder );
+            try
+            {
+                parser.parse();
+            }
+            finally
+            {
+                _grammarProfile.add( recorder );
+            }
+        }
+        log.fine( "Javancss._parseSource(JavaParserInterface).SUCCESSFULLY_PARSED" );
+
+        FileMetric fileMetric = new FileMetric();
+        fileMetric.ncss = parser.getNcss();
+        fileMetric.loc = parser.getLOC();
+        fileMetric.javadocs = parser.getJvdc();
+        fileMetric.javadocsLn = parser.getJdcl();
+        fileMetric.singleLn = parser.getSl();
+        fileMetric.multiLn = parser.getMl();
+        fileMetric.functionMetrics = parser.getFunction();
+        fileMetric.objectMetrics = parser.getObject();
+        fileMetric.packageMetrics = parser.getPackage();
+        for ( Map.Entry<String, PackageMetric> entry : fileMetric.packageMetrics.entrySet() )
+        {
+            entry.getValue().name = entry.getKey();
+        }
+
+        return fileMetric;
+    }
 
-        // opens the file
+    /**
+     * Adds the metrics of one parsed source to the global results.
+     */
+    private void _addFileMetric( FileMetric fileMetric )
+    {
+        _ncss += fileMetric.ncss; // increment the ncss
+        _loc += fileMetric.loc; // and loc
+        if ( _bKeepMetrics && _streamingFormatter == null )
+        {
+            // add new data to global vector
+            _vFunctionMetrics.addAll( fileMetric.functionMetrics );
+            _vObjectMetrics.addAll( fileMetric.objectMetrics );
+        }
+
+        for ( MetricsListener listener : _vMetricsListeners )
+        {
+            for ( ObjectMetric objectMetric : fileMetric.objectMetrics )
+            {
+                listener.objectMeasured( objectMetric );
+            }
+            for ( FunctionMetric functionMetric : fileMetric.functionMetrics )
+            {
+                listener.functionMeasured( functionMetric );
+            }
+            for ( PackageMetric packageMetric : fileMetric.packageMetrics.values() )
+            {
+                listener.packageMeasured( packageMetric );
+            }
+            listener.fileFinished( fileMetric );
+        }
+
+        // the package metrics of the file stay as they are for the listeners
+        for ( PackageMetric pckmNext : fileMetric.packageMetrics.values() )
+        {
+            PackageMetric pckmTotal = _htPackages.get( pckmNext.name );
+            if ( pckmTotal == null )
+            {
+                pckmTotal = new PackageMetric();
+                pckmTotal.name = pckmNext.name;
+                _htPackages.put( pckmTotal.name, pckmTotal );
+            }
+            pckmTotal.add( pckmNext );
+        }
+
+        _lastFileMetric = fileMetric;
+    }
+
+    private void _fireFileStarted( File file )
+    {
+        for ( MetricsListener listener : _vMetricsListeners )
+        {
+            listener.fileStarted( file );
+        }
+    }
+
+    private void _fireFileFailed( File file, String message, Throwable error )
+    {
+        for ( MetricsListener listener : _vMetricsListeners )
+        {
+            listener.fileFailed( file, message, error );
+        }
+    }
+
+    /**
+     * What is remembered of a measured source file to repeat its
+     * metrics for identical copies. Without the objects and functions
+     * it only stands for copies of files without any, like
+     * package-info.java.
+     */
+    private static class ContentSummary
+    {
+        private final int ncss;
+        private final int firstLine;
+        private final int javadocs;
+        private final int javadocsLn;
+        private final int singleLn;
+        private final int multiLn;
+        private final int loc;
+        private final Map<String, PackageMetric> packageMetrics;
+        /** null if they were not remembered. */
+        private final List<FunctionMetric> functionMetrics;
+        /** null if they were not remembered. */
+        private final List<ObjectMetric> objectMetrics;
+
+        private ContentSummary( FileMetric fileMetric, boolean bKeepLists )
+        {
+            ncss = fileMetric.ncss;
+            firstLine = fileMetric.firstLine;
+            javadocs = fileMetric.javadocs;
+            javadocsLn = fileMetric.javadocsLn;
+            singleLn = fileMetric.singleLn;
+            multiLn = fileMetric.multiLn;
+            loc = fileMetric.loc;
+            packageMetrics = fileMetric.packageMetrics;
+            boolean bLists = bKeepLists || ( fileMetric.functionMetrics.isEmpty() && fileMetric.objectMetrics.isEmpty() );
+            functionMetrics = bLists ? fileMetric.functionMetrics : null;
+            objectMetrics = bLists ? fileMetric.objectMetrics : null;
+        }
+
+        /**
+         * @return whether the metrics of a copy can be repeated from
+         *         this summary, otherwise the copy has to be parsed.
+         */
+        private boolean isComplete()
+        {
+            return functionMetrics != null;
+        }
+
+        private FileMetric toFileMetric( String name )
+        {
+            FileMetric fileMetric = new FileMetric();
+            fileMetric.name = name;
+            fileMetric.ncss = ncss;
+            fileMetric.firstLine = firstLine;
+            fileMetric.javadocs = javadocs;
+            fileMetric.javadocsLn = javadocsLn;
+            fileMetric.singleLn = singleLn;
+            fileMetric.multiLn = multiLn;
+            fileMetric.loc = loc;
+            fileMetric.functionMetrics.addAll( functionMetrics );
+            fileMetric.objectMetrics.addAll( objectMetrics );
+            fileMetric.packageMetrics.putAll( packageMetrics );
+
+            return fileMetric;
+        }
+    }
+
+    /**
+     * Outcome of measuring one source file: either its metrics or
+     * the error that prevented them from being collected.
+     */
+    private static class FileMeasurement
+    {
+        private File file = null;
+        private FileMetric fileMetric = null;
+        /** Size of the source, -1 if it could not be read. */
+        private long size = -1;
+        /** Whether it is an identical copy of a source file measured before. */
+        private boolean duplicate = false;
+        /** Whether it was only counted by the scanner. */
+        private boolean budgetExceeded = false;
+        private String errorMessage = null;
+        private Throwable error = null;
+
+        // for the run statistics, times in nanoseconds
+        private long readingTime = 0;
+        private long parsingTime = 0;
+        private long lexingTime = 0;
+        private int tokens = 0;
+    }
+
+    /**
+     * Measures one source file without touching the global results,
+     * so several files can be measured at the same time.
+     */
+    private FileMeasurement _measureSource( File sSourceFile_ )
+    {
+        Object event = MeasurementEvents.get().beginFile();
+        FileMeasurement measurement = _measureSourceFile( sSourceFile_ );
+        if ( measurement.fileMetric == null )
+        {
+            MeasurementEvents.get().parseFailed( sSourceFile_.getPath(), measurement.errorMessage );
+        }
+        else if ( event != null )
+        {
+            MeasurementEvents.get().fileMeasured( event, sSourceFile_.getPath(), measurement.size, measurement.tokens,
+                                                  measurement.fileMetric.ncss );
+        }
+
+        return measurement;
+    }
+
+    private FileMeasurement _measureSourceFile( File sSourceFile_ )
+    {
+        FileMeasurement measurement = new FileMeasurement();
+        measurement.file = sSourceFile_;
+        long start = System.nanoTime();
+        byte[] content;
+        byte[] contentHash;
+        String sContentHash;
+        CharBuffer source;
+
+        // reads and decodes the whole file at once
         try
         {
-            reader = newReader( sSourceFile_ );
+            content = readBytes( sSourceFile_ );
+            measurement.size = content.length;
+            // hashed once for the cache and the copies, if either is used
+            contentHash = _bDeduplicate || _cache != null ? MeasurementCache.hash( content ) : null;
+            sContentHash = _bDeduplicate ? MeasurementCache.toHex( contentHash ) : null;
+            ContentSummary original = sContentHash == null ? null : _htContents.get( sContentHash );
+            if ( original != null && original.isComplete() )
+            {
+                measurement.fileMetric = original.toFileMetric( sSourceFile_.getPath() );
+                measurement.duplicate = true;
+                measurement.readingTime = System.nanoTime() - start;
+
+                return measurement;
+            }
+            if ( _cache != null )
+            {
+                measurement.fileMetric = _cache.get( sSourceFile_, contentHash );
+                if ( measurement.fileMetric != null )
+                {
+                    measurement.fileMetric.name = sSourceFile_.getPath();
+                    _addContent( sContentHash, measurement.fileMetric );
+                    measurement.readingTime = System.nanoTime() - start;
+
+                    return measurement;
+                }
+            }
+            source = _decode( content );
+            measurement.readingTime = System.nanoTime() - start;
+        }
+        catch ( IOException pIOException )
+        {
+            if ( sSourceFile_ instanceof ArchiveEntry )
+            {
+                measurement.errorMessage = "Cannot read archive: " + sSourceFile_.getAbsolutePath() + " (" + pIOException.getMessage() + ")";
+            }
+            else
+            {
+                measurement.errorMessage = "File not found: " + sSourceFile_.getAbsolutePath();
+            }
+            measurement.error = pIOException;
+
+            return measurement;
+        }
+
+        JavaParserInterface pJavaParser = null;
+        start = System.nanoTime();
+        try
+        {
+            if ( _bFast )
+            {
+                measurement.fileMetric = _scanSource( source, measurement );
+            }
+            else
+            {
+                pJavaParser = _newParser( source );
+                try
+                {
+                    measurement.fileMetric = _parseWithinBudget( pJavaParser, measurement );
+                }
+                catch ( BudgetTokenManager.BudgetExceededException pBudgetException )
+                {
+                    // the scanner takes linear time whatever the source looks like
+                    measurement.fileMetric = _scanSource( source, measurement );
+                    measurement.fileMetric.name = sSourceFile_.getPath();
+                    measurement.budgetExceeded = true;
+                    measurement.errorMessage = "Parse budget exceeded in " + sSourceFile_.getAbsolutePath() + " ("
+                        + pBudgetException.getMessage() + "), only NCSS, LOC and comments are counted\n";
+                    measurement.parsingTime = System.nanoTime() - start;
+
+                    return measurement;
+                }
+            }
+            measurement.parsingTime = System.nanoTime() - start;
+            measurement.fileMetric.name = sSourceFile_.getPath();
+            _addContent( sContentHash, measurement.fileMetric );
+            if ( _cache != null )
+            {
+                _cache.put( sSourceFile_, contentHash, measurement.fileMetric );
+            }
+        }
+        catch ( Exception pParseException )
+        {
+            measurement.errorMessage = "ParseException in " + sSourceFile_.getAbsolutePath() + "\n";
+            if ( pJavaParser != null )
+            {
+                measurement.errorMessage += "Last useful checkpoint: \"" + pJavaParser.getLastFunction() + "\"\n";
+            }
+            measurement.errorMessage += pParseException.getMessage() + "\n";
+            measurement.error = pParseException;
+        }
+        catch ( Error pTokenMgrError )
+        {
+            measurement.errorMessage = "TokenMgrError in " + sSourceFile_.getAbsolutePath() +
+                   "\n" + pTokenMgrError.getMessage() + "\n";
+            measurement.error = pTokenMgrError;
+        }
+
+        return measurement;
+    }
+
+    /**
+     * Runs the parser within the token and time budgets of a source.
+     * With a time limit, the parser runs on another thread, which is
+     * given up if it takes too long. It is then stopped as soon as it
+     * reads the next token, while the caller moves on to the next file.
+     *
+     * @throws BudgetTokenManager.BudgetExceededException if a budget is
+     *         exceeded.
+     */
+    private FileMetric _parseWithinBudget( final JavaParserInterface parser, FileMeasurement measurement )
+        throws Exception, Error
+    {
+        BudgetTokenManager tokenManager = null;
+        if ( parser instanceof JavaParser && ( (JavaParser) parser ).token_source instanceof BudgetTokenManager )
+        {
+            tokenManager = (BudgetTokenManager) ( (JavaParser) parser ).token_source;
+            tokenManager.reset( _maxTokens, _statistics != null );
+        }
+        if ( _timeoutExecutor == null || tokenManager == null )
+        {
+            FileMetric fileMetric = _parseSource( parser );
+            _addTokens( tokenManager, measurement );
+
+            return fileMetric;
+        }
+
+        Future<FileMetric> future = _timeoutExecutor.submit( new Callable<FileMetric>()
+        {
+            public FileMetric call()
+                throws Exception
+            {
+                return _parseSource( parser );
+            }
+        } );
+        try
+        {
+            FileMetric fileMetric = future.get( _parseTimeout, TimeUnit.SECONDS );
+            _addTokens( tokenManager, measurement );
+
+            return fileMetric;
+        }
+        catch ( TimeoutException pTimeoutException )
+        {
+            tokenManager.cancel();
+            future.cancel( true );
+            // the parser is still in use by the other thread
+            ParserPool.discard( parser );
+
+            throw new BudgetTokenManager.BudgetExceededException( "took longer than " + _parseTimeout + " s" );
+        }
+        catch ( ExecutionException pExecutionException )
+        {
+            Throwable cause = pExecutionException.getCause();
+            if ( cause instanceof Exception )
+            {
+                throw (Exception) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw pExecutionException;
+        }
+    }
+
+    /**
+     * Counts the source with the scanner of the fast mode.
+     */
+    private FileMetric _scanSource( CharBuffer source, FileMeasurement measurement )
+        throws Exception, Error
+    {
+        BudgetTokenManager tokenManager = new BudgetTokenManager( _newStream( source ) );
+        tokenManager.reset( 0, _statistics != null );
+        FileMetric fileMetric = _scanSource( new NcssScanner( tokenManager ) );
+        _addTokens( tokenManager, measurement );
+
+        return fileMetric;
+    }
+
+    private static void _addTokens( BudgetTokenManager tokenManager, FileMeasurement measurement )
+    {
+        if ( tokenManager != null )
+        {
+            measurement.tokens += tokenManager.getTokens();
+            measurement.lexingTime += tokenManager.getTime();
+        }
+    }
+
+    /**
+     * Remembers the metrics of a parsed source for identical copies.
+     * The objects and functions are only remembered if they are kept
+     * as objects for the whole run anyway, so streaming, not keeping
+     * the metrics and compact functions still save the memory for them.
+     *
+     * @param sContentHash null if identical copies are parsed again.
+     */
+    private void _addContent( String sContentHash, FileMetric fileMetric )
+    {
+        if ( sContentHash != null )
+        {
+            _htContents.put( sContentHash, new ContentSummary( fileMetric, _bKeepMetrics && _streamingFormatter == null
+                                                                       && !isCompactFunctions() ) );
+        }
+    }
+
+    /**
+     * Adds the outcome of measuring one source file to the global
+     * results, or to the error message if it failed.
+     */
+    private void _addMeasurement( FileMeasurement measurement )
+    {
+        if ( _statistics == null )
+        {
+            _addMeasurementMetrics( measurement );
+
+            return;
+        }
+
+        long start = System.nanoTime();
+        _addMeasurementMetrics( measurement );
+        _statistics.addAggregationTime( System.nanoTime() - start );
+        if ( measurement.size >= 0 )
+        {
+            _statistics.addFile( measurement.file, measurement.size, measurement.readingTime, measurement.lexingTime,
+                                 measurement.parsingTime, measurement.tokens );
+        }
+        if ( measurement.duplicate )
+        {
+            _statistics.addDuplicate( measurement.size );
+        }
+        if ( measurement.budgetExceeded )
+        {
+            _statistics.addBudgetExceeded();
+        }
+    }
+
+    private void _addMeasurementMetrics( FileMeasurement measurement )
+    {
+        if ( measurement.duplicate )
+        {
+            _duplicateFiles++;
+            _duplicateBytes += measurement.size;
+        }
+        if ( measurement.fileMetric != null )
+        {
+            _addFileMetric( measurement.fileMetric );
+            if ( measurement.errorMessage != null )
+            {
+                // only counted by the scanner
+                _sErrorMessage = ( _sErrorMessage == null ? "" : _sErrorMessage ) + measurement.errorMessage;
+            }
+
+            return;
+        }
+
+        if ( measurement.error instanceof IOException )
+        {
+            if ( _sErrorMessage == null || _sErrorMessage.trim().length() == 0 )
+            {
+                _sErrorMessage = "";
+            }
+            else
+            {
+                _sErrorMessage += "\n";
+            }
+        }
+        else if ( _sErrorMessage == null )
+        {
+            _sErrorMessage = "";
+        }
+        _sErrorMessage += measurement.errorMessage;
+        _thrwError = measurement.error;
+
+        _fireFileFailed( measurement.file, measurement.errorMessage, measurement.error );
+    }
+
+    private void _measureSource( Reader reader )
+        throws Exception, Error
+    {
+        log.fine( "_measureSource(Reader).ENTER" );
+
+        _fireFileStarted( null );
+        try
+        {
+            if ( _bFast )
+            {
+                _addFileMetric( _scanSource( new NcssScanner( reader ) ) );
+
+                return;
+            }
+
+            // create a parser object
+            _pJavaParser = _newParser( reader );
+
+            _addFileMetric( _parseSource( _pJavaParser ) );
+        }
+        catch ( Exception pParseException )
+        {
+            if ( _sErrorMessage == null )
+            {
+                _sErrorMessage = "";
+            }
+            _sErrorMessage += "ParseException in STDIN";
+            if ( _pJavaParser != null )
+            {
+                _sErrorMessage += "\nLast useful checkpoint: \"" + _pJavaParser.getLastFunction() + "\"\n";
+            }
+            _sErrorMessage += pParseException.getMessage() + "\n";
+            _thrwError = pParseException;
+            _fireFileFailed( null, _sErrorMessage, pParseException );
+
+            throw pParseException;
+        }
+        catch ( Error pTokenMgrError )
+        {
+            if ( _sErrorMessage == null )
+            {
+                _sErrorMessage = "";
+            }
+            _sErrorMessage += "TokenMgrError in STDIN\n";
+            _sErrorMessage += pTokenMgrError.getMessage() + "\n";
+            _thrwError = pTokenMgrError;
+            _fireFileFailed( null, _sErrorMessage, pTokenMgrError );
+
+            throw pTokenMgrError;
+        }
+    }
+
+    private void _measureFiles( Iterable<File> sourceFiles )
+        throws InterruptedException, ExecutionException
+    {
+        if ( _threads > 1 )
+        {
+            _measureFilesInParallel( sourceFiles );
+
+            return;
+        }
+
+        Iterator<File> files = sourceFiles.iterator();
+        try
+        {
+            while ( !exit && files.hasNext() )
+            {
+                File file = files.next();
+                _fireFileStarted( file );
+                // error details are written into lastError
+                _addMeasurement( _measureSource( file ) );
+            }
+        }
+        finally
+        {
+            SourceFinder.close( files );
+            // the worker threads of a run end with it, this one may
+            // live on in a host like the Ant task or the daemon
+            ParserPool.release();
+        }
+    }
+
+    /**
+     * Parses the files on a pool of worker threads, each file with its
+     * own parser. The results are added in the order of the given list,
+     * so they are the same as the ones of a sequential run.
+     * Only a few files per thread are measured ahead of the one to be
+     * added next, so that not more results than that are held in memory.
+     */
+    private void _measureFilesInParallel( Iterable<File> sourceFiles )
+        throws InterruptedException, ExecutionException
+    {
+        int threads = _threads;
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        Iterator<File> files = null;
+        try
+        {
+            LinkedList<Future<FileMeasurement>> futures = new LinkedList<Future<FileMeasurement>>();
+            files = sourceFiles.iterator();
+            while ( !exit && ( files.hasNext() || !futures.isEmpty() ) )
+            {
+                while ( files.hasNext() && futures.size() < 2 * threads )
+                {
+                    final File file = files.next();
+                    _fireFileStarted( file );
+                    futures.add( executor.submit( new Callable<FileMeasurement>()
+                    {
+                        public FileMeasurement call()
+                        {
+                            return _measureSource( file );
+                        }
+                    } ) );
+                }
+
+                _addMeasurement( futures.removeFirst().get() );
+            }
+        }
+        finally
+        {
+            if ( files != null )
+            {
+                SourceFinder.close( files );
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * If arguments were provided, they are used, otherwise
+     * the input stream is used.
+     */
+    private void _measureRoot( Reader reader )
+        throws Exception, Error
+    {
+        // nothing of a previous measurement is left over
+        _ncss = 0;
+        _loc = 0;
+        _vFunctionMetrics = isCompactFunctions() ? new FunctionMetricTable() : new ArrayList<FunctionMetric>();
+        _vObjectMetrics = new ArrayList<ObjectMetric>();
+        _htPackages = new HashMap<String, PackageMetric>();
+        _lastFileMetric = null;
+        _sErrorMessage = null;
+        _thrwError = null;
+
+        if ( _streamingFormatter != null )
+        {
+            _vMetricsListeners.remove( _streamingFormatter );
+            _streamingFormatter.dispose();
+            _streamingFormatter = null;
+        }
+        if ( _bStreaming )
+        {
+            _streamingFormatter = new StreamingXmlFormatter( this );
+            _vMetricsListeners.add( _streamingFormatter );
         }
-        catch ( IOException pIOException )
+
+        _htContents.clear();
+        _duplicateFiles = 0;
+        _duplicateBytes = 0;
+        _statistics = _bStatistics ? new RunStatistics( _threads ) : null;
+
+        _cache = null;
+        if ( _cacheDirectory != null )
         {
-            if ( _sErrorMessage == null || _sErrorMessage.trim().length() == 0 )
+            try
             {
-                _sErrorMessage = "";
+                _cache = new MeasurementCache( _cacheDirectory, encoding, _bFast );
             }
-            else
+            catch ( IOException pIOException )
             {
-                _sErrorMessage += "\n";
+                log.warning( pIOException.getMessage() + ", measuring without cache" );
             }
-            _sErrorMessage += "File not found: " + sSourceFile_.getAbsolutePath();
-            _thrwError = pIOException;
-
-            throw pIOException;
         }
 
-        String sTempErrorMessage = _sErrorMessage;
-        try
+        _grammarProfile = _grammarProfileFile == null ? null : new GrammarProfile();
+        // either there are argument files, or stdin is used
+        if ( _vJavaSourceFiles == null )
         {
-            // the same method but with a Reader
             _measureSource( reader );
         }
-        catch ( Exception pParseException )
+        else
         {
-            if ( sTempErrorMessage == null )
+            // the collection of files get measured
+            if ( _parseTimeout > 0 )
+            {
+                _timeoutExecutor = Executors.newCachedThreadPool( new ThreadFactory()
+                {
+                    public Thread newThread( Runnable runnable )
+                    {
+                        // parsers given up must not keep the program running
+                        Thread thread = new Thread( runnable, "javancss-parser" );
+                        thread.setDaemon( true );
+
+                        return thread;
+                    }
+                } );
+            }
+            try
+            {
+                _measureFiles( _statistics == null ? _vJavaSourceFiles : _statistics.discover( _vJavaSourceFiles ) );
+            }
+            finally
             {
-                sTempErrorMessage = "";
+                if ( _timeoutExecutor != null )
+                {
+                    _timeoutExecutor.shutdownNow();
+                    _timeoutExecutor = null;
+                }
             }
-            sTempErrorMessage += "ParseException in " + sSourceFile_.getAbsolutePath() +
-                   "\nLast useful checkpoint: \"" + _pJavaParser.getLastFunction() + "\"\n";
-            sTempErrorMessage += pParseException.getMessage() + "\n";
+        }
+        if ( _grammarProfile != null )
+        {
+            _writeGrammarProfile();
+        }
 
-            _sErrorMessage = sTempErrorMessage;
-            _thrwError = pParseException;
+        _vPackageMetrics = new ArrayList<PackageMetric>();
+        for ( PackageMetric pkm : _htPackages.values() )
+        {
+            _vPackageMetrics.add( pkm );
+        }
+        Collections.sort( _vPackageMetrics );
 
-            throw pParseException;
+        // the metrics are not needed any more to find copies
+        _htContents.clear();
+        if ( _statistics != null )
+        {
+            _statistics.finish();
         }
-        catch ( Error pTokenMgrError )
+    }
+
+    private void _writeGrammarProfile()
+    {
+        try
         {
-            if ( sTempErrorMessage == null )
+            PrintWriter pw = new PrintWriter( new OutputStreamWriter( new FileOutputStream( _grammarProfileFile ), "UTF-8" ) );
+            try
             {
-                sTempErrorMessage = "";
+                _grammarProfile.print( pw );
             }
-            sTempErrorMessage += "TokenMgrError in " + sSourceFile_.getAbsolutePath() +
-                   "\n" + pTokenMgrError.getMessage() + "\n";
-            _sErrorMessage = sTempErrorMessage;
-            _thrwError = pTokenMgrError;
-
-            throw pTokenMgrError;
+            finally
+            {
+                pw.close();
+            }
+        }
+        catch ( IOException pIOException )
+        {
+            log.warning( "Cannot write grammar profile " + _grammarProfileFile + ": " + pIOException.getMessage() );
         }
     }
 
-    private void _measureSource( Reader reader )
-        throws Exception, Error
+    /**
+     * Measures only the source files changed since the given git
+     * revision and merges them into the XML report of that revision.
+     * The old versions of the changed files are measured as well, to
+     * take their stale metrics out of the report.
+     *
+     * @param sChangesFile output of git diff --name-status, null to
+     *                     run it for the revision.
+     * @param sources only the changed files found by this are
+     *                measured, all if null.
+     */
+    private void _measureChanges( File baselineFile, String sRevision, String sChangesFile, Iterable<File> sources,
+                                  boolean packages, boolean objects, boolean functions )
+        throws IOException
     {
-        log.fine( "_measureSource(Reader).ENTER" );
+        BaselineReport baseline = BaselineReport.read( baselineFile );
+        _checkReport( baseline, "The baseline report " + baselineFile, packages, objects, functions );
 
-        try
+        GitChanges changes = new GitChanges( new File( System.getProperty( "user.dir" ) ), sRevision );
+        if ( sChangesFile == null )
         {
-            // create a parser object
-            if ( log.isLoggable( Level.FINE ) )
+            changes.readDiff();
+        }
+        else
+        {
+            Reader reader = new InputStreamReader( new FileInputStream( normalizeFileName( sChangesFile ) ), "UTF-8" );
+            try
             {
-                log.fine( "creating JavaParserDebug" );
-                _pJavaParser = new JavaParserDebug( reader );
+                changes.read( reader );
             }
-            else
+            finally
             {
-                log.fine( "creating JavaParser" );
-                _pJavaParser = new JavaParser( reader );
+                reader.close();
             }
+        }
 
-            // execute the parser
-            _pJavaParser.parse();
-            log.fine( "Javancss._measureSource(DataInputStream).SUCCESSFULLY_PARSED" );
-
-            _ncss += _pJavaParser.getNcss(); // increment the ncss
-            _loc += _pJavaParser.getLOC(); // and loc
-            // add new data to global vector
-            _vFunctionMetrics.addAll( _pJavaParser.getFunction() );
-            _vObjectMetrics.addAll( _pJavaParser.getObject() );
-            Map<String, PackageMetric> htNewPackages = _pJavaParser.getPackage();
+        File tempDirectory = Files.createTempDirectory( "javancss-baseline" ).toFile();
+        try
+        {
+            List<File> vPreviousFiles = new ArrayList<File>();
+            List<File> vCurrentFiles = new ArrayList<File>();
+            for ( GitChanges.Change change : changes.getChanges() )
+            {
+                if ( change.previousPath != null && _isSource( sources, changes.getFile( change.previousPath ) ) )
+                {
+                    vPreviousFiles.add( changes.checkout( change.previousPath, tempDirectory ) );
+                }
+                else
+                {
+                    vPreviousFiles.add( null );
+                }
+                if ( change.currentPath != null && _isSource( sources, changes.getFile( change.currentPath ) ) )
+                {
+                    vCurrentFiles.add( changes.getFile( change.currentPath ) );
+                }
+                else
+                {
+                    vCurrentFiles.add( null );
+                }
+            }
 
-            /* List vNewPackages = new Vector(); */
-            for ( Map.Entry<String, PackageMetric> entry : htNewPackages.entrySet() )
+            Map<String, FileMetric> htPrevious = _measureFileMetrics( vPreviousFiles );
+            Map<String, FileMetric> htCurrent = _measureFileMetrics( vCurrentFiles );
+            List<FileMetric> vPrevious = new ArrayList<FileMetric>();
+            List<FileMetric> vCurrent = new ArrayList<FileMetric>();
+            for ( int i = 0; i < vPreviousFiles.size(); i++ )
             {
-                String sPackage = entry.getKey();
+                File previous = vPreviousFiles.get( i );
+                File current = vCurrentFiles.get( i );
+                vPrevious.add( previous == null ? null : htPrevious.get( previous.getPath() ) );
+                vCurrent.add( current == null ? null : htCurrent.get( current.getPath() ) );
+            }
+            baseline.replace( vPrevious, vCurrent );
+        }
+        finally
+        {
+            _delete( tempDirectory );
+        }
 
-                PackageMetric pckmNext = htNewPackages.get( sPackage );
-                pckmNext.name = sPackage;
+        if ( baseline.getMissing() > 0 )
+        {
+            log.warning( baseline.getMissing() + " metrics of the old versions of the changed files are not in "
+                         + baselineFile + ", it was probably not created from revision " + sRevision );
+        }
 
-                PackageMetric pckmPrevious = _htPackages.get( sPackage );
-                pckmNext.add( pckmPrevious );
+        _setReport( baseline );
+    }
 
-                _htPackages.put( sPackage, pckmNext );
-            }
+    /**
+     * Merges XML reports of separately measured source files, e.g. of
+     * the shards of a run. The objects and functions are kept in the
+     * order of the reports, so merging the reports of the shards in
+     * order gives the report of a single run over all files.
+     */
+    private void _mergeReports( List<String> vReportNames, boolean packages, boolean objects, boolean functions )
+        throws IOException
+    {
+        if ( vReportNames.isEmpty() )
+        {
+            throw new IOException( "No reports to merge." );
         }
-        catch ( Exception pParseException )
+
+        BaselineReport merged = null;
+        for ( String sReportName : vReportNames )
         {
-            if ( _sErrorMessage == null )
+            File reportFile = new File( normalizeFileName( sReportName ) );
+            BaselineReport report = BaselineReport.read( reportFile );
+            _checkReport( report, "The report " + reportFile, packages, objects, functions );
+            if ( merged == null )
             {
-                _sErrorMessage = "";
+                merged = report;
             }
-            _sErrorMessage += "ParseException in STDIN";
-            if ( _pJavaParser != null )
+            else
             {
-                _sErrorMessage += "\nLast useful checkpoint: \"" + _pJavaParser.getLastFunction() + "\"\n";
+                merged.add( report );
             }
-            _sErrorMessage += pParseException.getMessage() + "\n";
-            _thrwError = pParseException;
-
-            throw pParseException;
         }
-        catch ( Error pTokenMgrError )
-        {
-            if ( _sErrorMessage == null )
-            {
-                _sErrorMessage = "";
-            }
-            _sErrorMessage += "TokenMgrError in STDIN\n";
-            _sErrorMessage += pTokenMgrError.getMessage() + "\n";
-            _thrwError = pTokenMgrError;
 
-            throw pTokenMgrError;
+        _setReport( merged );
+    }
+
+    private static void _checkReport( BaselineReport report, String sReport, boolean packages, boolean objects,
+                                      boolean functions )
+        throws IOException
+    {
+        if ( ( packages && !report.hasPackages() ) || ( objects && !report.hasObjects() )
+             || ( functions && !report.hasFunctions() ) || ( !report.hasNcss() && ( objects || functions || !packages ) ) )
+        {
+            throw new IOException( sReport + " does not contain all the metrics asked for." );
         }
     }
 
-    private void _measureFiles( List<File> sourceFiles ) throws TokenMgrError
+    private void _setReport( BaselineReport report )
     {
-        for ( File file : sourceFiles )
+        _ncss = report.getNcss();
+        _vPackageMetrics = report.hasPackages() ? report.getPackageMetrics() : new ArrayList<PackageMetric>();
+        _vObjectMetrics = report.hasObjects() ? report.getObjectMetrics() : new ArrayList<ObjectMetric>();
+        _vFunctionMetrics.clear();
+        if ( report.hasFunctions() )
         {
-            if ( !exit )
-            {
-                try
-                {
-                    _measureSource( file );
-                }
-                catch ( Throwable pThrowable )
-                {
-                    // hmm, do nothing? Use getLastError() or so to check for details.
-                    // error details have been written into lastError
-                }
-            }
+            _vFunctionMetrics.addAll( report.getFunctionMetrics() );
         }
     }
 
+    private static boolean _isSource( Iterable<File> sources, File file )
+    {
+        return !( sources instanceof SourceFinder ) || ( (SourceFinder) sources ).contains( file );
+    }
+
     /**
-     * If arguments were provided, they are used, otherwise
-     * the input stream is used.
+     * Measures the given files with the settings of this object.
+     *
+     * @param vFiles null elements are skipped.
+     * @return the metrics of the files by path, parse errors are added
+     *         to the error message.
      */
-    private void _measureRoot( Reader reader )
-        throws Exception, Error
+    private Map<String, FileMetric> _measureFileMetrics( List<File> vFiles )
     {
-        _htPackages = new HashMap<String, PackageMetric>();
-
-        // either there are argument files, or stdin is used
-        if ( _vJavaSourceFiles == null )
+        List<File> vSourceFiles = new ArrayList<File>();
+        for ( File file : vFiles )
         {
-            _measureSource( reader );
+            if ( file != null )
+            {
+                vSourceFiles.add( file );
+            }
         }
-        else
+
+        final Map<String, FileMetric> htFileMetrics = new HashMap<String, FileMetric>();
+        Javancss javancss = new Javancss();
+        javancss.setEncoding( encoding );
+        javancss.setThreads( _threads );
+        javancss.setReuseParsers( _bReuseParsers );
+        javancss.setDeduplicate( _bDeduplicate );
+        javancss.setKeepMetrics( false );
+        javancss.addMetricsListener( new MetricsAdapter()
         {
-            // the collection of files get measured
-            _measureFiles( _vJavaSourceFiles );
+            @Override
+            public void fileFinished( FileMetric fileMetric )
+            {
+                htFileMetrics.put( fileMetric.name, fileMetric );
+            }
+        } );
+        javancss.measure( vSourceFiles );
+
+        if ( javancss.getLastErrorMessage() != null )
+        {
+            _sErrorMessage = ( _sErrorMessage == null ? "" : _sErrorMessage + "\n" ) + javancss.getLastErrorMessage();
+            _thrwError = javancss.getLastError();
         }
 
-        _vPackageMetrics = new ArrayList<PackageMetric>();
-        for ( PackageMetric pkm : _htPackages.values() )
+        return htFileMetrics;
+    }
+
+    private static void _delete( File file )
+    {
+        File[] files = file.listFiles();
+        if ( files != null )
         {
-            _vPackageMetrics.add( pkm );
+            for ( File child : files )
+            {
+                _delete( child );
+            }
         }
-        Collections.sort( _vPackageMetrics );
+        file.delete();
     }
 
-    public List<Object[]> getImports()
+    public List<ImportInfo> getImports()
     {
         return _vImports;
     }
 
     /**
-     * Return info about package statement.
-     * First element has name of package,
-     * then begin of line, etc.
+     * Return info about package statement: the name of
+     * the package and its position in the source file.
      */
-    public Object[] getPackage()
+    public PackageInfo getPackage()
     {
-        return _aoPackage;
+        return _packageInfo;
     }
 
     /**
@@ -320,19 +1225,34 @@ public class Javancss
     public void printObjectNcss( Writer w )
         throws IOException
     {
+        Object event = MeasurementEvents.get().beginPhase();
         getFormatter().printObjectNcss( w );
+        if ( event != null )
+        {
+            MeasurementEvents.get().phaseFinished( event, "objects" );
+        }
     }
 
     public void printFunctionNcss( Writer w )
         throws IOException
     {
+        Object event = MeasurementEvents.get().beginPhase();
         getFormatter().printFunctionNcss( w );
+        if ( event != null )
+        {
+            MeasurementEvents.get().phaseFinished( event, "functions" );
+        }
     }
 
     public void printPackageNcss( Writer w )
         throws IOException
     {
+        Object event = MeasurementEvents.get().beginPhase();
         getFormatter().printPackageNcss( w );
+        if ( event != null )
+        {
+            MeasurementEvents.get().phaseFinished( event, "packages" );
+        }
     }
 
     public void printJavaNcss( Writer w )
@@ -362,10 +1282,13 @@ public class Javancss
     {
         setEncoding( encoding_ );
         _vJavaSourceFiles = vJavaSourceFiles_;
-        _measureRoot();
+        measureRoot();
     }
 
-    private void _measureRoot()
+    /**
+     * Measures the source files, errors are printed to standard error.
+     */
+    void measureRoot()
         throws Error
     {
         try
@@ -374,11 +1297,23 @@ public class Javancss
         }
         catch ( Throwable pThrowable )
         {
-            log.fine( "Javancss._measureRoot().e: " + pThrowable );
+            log.fine( "Javancss.measureRoot().e: " + pThrowable );
             pThrowable.printStackTrace(System.err);
         }
     }
 
+    /**
+     * Measures the given source files with the current settings.
+     * Use it together with the {@link #Javancss()} constructor when
+     * settings like the number of threads have to be applied before
+     * the measurement starts.
+     */
+    public void measure( List<File> vJavaSourceFiles_ )
+    {
+        _vJavaSourceFiles = vJavaSourceFiles_;
+        measureRoot();
+    }
+
     public Javancss( File sJavaSourceFile_ )
     {
         this( sJavaSourceFile_, DEFAULT_ENCODING );
@@ -389,9 +1324,8 @@ public class Javancss
         log.fine( "Javancss.<init>(String).sJavaSourceFile_: " + sJavaSourceFile_ );
         setEncoding( encoding_ );
         _sErrorMessage = null;
-        _vJavaSourceFiles = new ArrayList<File>();
-        _vJavaSourceFiles.add( sJavaSourceFile_ );
-        _measureRoot();
+        _vJavaSourceFiles = Collections.singletonList( sJavaSourceFile_ );
+        measureRoot();
     }
 
     /**
@@ -423,17 +1357,10 @@ public class Javancss
         try
         {
             log.fine( "Javancss.parseImports().START_PARSING" );
-            if ( !log.isLoggable( Level.FINE ) )
-            {
-                _pJavaParser = new JavaParser( reader );
-            }
-            else
-            {
-                _pJavaParser = new JavaParserDebug( reader );
-            }
+            _pJavaParser = _newParser( reader );
             _pJavaParser.parseImportUnit();
             _vImports = _pJavaParser.getImports();
-            _aoPackage = _pJavaParser.getPackageObjects();
+            _packageInfo = _pJavaParser.getPackageInfo();
             log.fine( "Javancss.parseImports().END_PARSING" );
         }
         catch ( Exception pParseException )
@@ -473,8 +1400,7 @@ public class Javancss
     public void setSourceFile( File javaSourceFile_ )
     {
         _sJavaSourceFile = javaSourceFile_;
-        _vJavaSourceFiles = new ArrayList<File>();
-        _vJavaSourceFiles.add( javaSourceFile_ );
+        _vJavaSourceFiles = Collections.singletonList( javaSourceFile_ );
     }
 
     public Javancss( Reader reader )
@@ -497,36 +1423,11 @@ public class Javancss
     }
 
     /**
-     * recursively adds *.java files
-     * @param dir the base directory to search
-     * @param v the list of file to add found files to
+     * @return the given files, and the *.java files in the given
+     *         directories selected by the include and exclude patterns.
+     *         Directories are searched while the files are measured.
      */
-    private static void _addJavaFiles( File dir, List<File> v )
-    {
-        File[] files = dir.listFiles();
-        if ( files == null || files.length == 0 )
-        {
-            return;
-        }
-
-        for ( File file : files )
-        {
-            if ( file.isDirectory() )
-            {
-                // Recurse!!!
-                _addJavaFiles( file, v );
-            }
-            else
-            {
-                if ( file.getName().endsWith( ".java" ) )
-                {
-                    v.add( file );
-                }
-            }
-        }
-    }
-
-    private List<File> findFiles( List<String> filenames, boolean recursive )
+    private Iterable<File> findFiles( List<String> filenames, boolean recursive, List<String> includes, List<String> excludes )
         throws IOException
     {
         if ( log.isLoggable( Level.FINE ) )
@@ -573,23 +1474,19 @@ public class Javancss
                         String[] vTheseJavaSourceFiles = sJavaSourceFileNames.split( "\n" );
                         for ( String name : vTheseJavaSourceFiles )
                         {
-                            newFiles.add( new File( name ) );
+                            // relative to user.dir, which the daemon sets to
+                            // the client's directory, not the one File uses
+                            if ( name.trim().length() > 0 )
+                            {
+                                newFiles.add( new File( normalizeFileName( name ) ) );
+                            }
                         }
                     }
                 }
             }
             else
             {
-                filename = normalizeFileName( filename );
-                File file = new File( filename );
-                if ( file.isDirectory() )
-                {
-                    _addJavaFiles( file, newFiles );
-                }
-                else
-                {
-                    newFiles.add( file );
-                }
+                newFiles.add( new File( normalizeFileName( filename ) ) );
             }
         }
 
@@ -598,7 +1495,7 @@ public class Javancss
             log.fine( "resolved filenames: " + newFiles );
         }
 
-        return newFiles;
+        return new SourceFinder( newFiles, includes, excludes );
     }
 
     /**
@@ -631,7 +1528,26 @@ public class Javancss
         options.addOption( OptionBuilder.withDescription( "Output in XML format." ).create( "xml" ) );
         options.addOption( OptionBuilder.withDescription( "Output file name. By default output goes to standard out." ).create( "out" ) );
         options.addOption( OptionBuilder.withDescription( "Recurse to subdirs." ).create( "recursive" ) );
+        options.addOption( OptionBuilder.withDescription( "Only measures the files in directories matching this pattern (may be repeated)." ).hasArg().create( "include" ) );
+        options.addOption( OptionBuilder.withDescription( "Skips the files and directories matching this pattern (may be repeated)." ).hasArg().create( "exclude" ) );
         options.addOption( OptionBuilder.withDescription( "Encoding used while reading source files (default: platform encoding)." ).hasArg().create( "encoding" ) );
+        options.addOption( OptionBuilder.withDescription( "Number of threads used to parse the source files (default: 1)." ).hasArg().create( "threads" ) );
+        options.addOption( OptionBuilder.withDescription( "Seconds the parser may take per source file, slower files are only counted like with -fast." ).hasArg().create( "timeout" ) );
+        options.addOption( OptionBuilder.withDescription( "Tokens the parser may read per source file, larger files are only counted like with -fast." ).hasArg().create( "maxtokens" ) );
+        options.addOption( OptionBuilder.withDescription( "Prints statistics about the run, like the time spent parsing and the slowest files." ).create( "stats" ) );
+        options.addOption( OptionBuilder.withDescription( "Writes a profile of the lookaheads of the grammar to this file." ).hasArg().create( "grammarprofile" ) );
+        options.addOption( OptionBuilder.withDescription( "Directory to cache the metrics of unchanged source files between runs." ).hasArg().create( "cache" ) );
+        options.addOption( OptionBuilder.withDescription( "Writes function and object metrics out while measuring instead of keeping them in memory (XML output only)." ).create( "stream" ) );
+        options.addOption( OptionBuilder.withDescription( "Keeps the function metrics in a compact table to save memory." ).create( "compact" ) );
+        options.addOption( OptionBuilder.withDescription( "Creates a new parser for every source file instead of reusing one per thread." ).create( "noreuse" ) );
+        options.addOption( OptionBuilder.withDescription( "Repeats the metrics of the first copy for identical copies of a source file instead of parsing them again." ).create( "dedup" ) );
+        options.addOption( OptionBuilder.withDescription( "Counts the program NCSS with a quick token scan instead of the full parser (ignored with the other metrics); only unmatched brackets are reported as syntax errors." ).create( "fast" ) );
+        options.addOption( OptionBuilder.withDescription( "Updates this XML report with the source files changed since it was created, instead of measuring all files." ).hasArg().create( "baseline" ) );
+        options.addOption( OptionBuilder.withDescription( "Git revision the baseline report was created from (default: HEAD)." ).hasArg().create( "revision" ) );
+        options.addOption( OptionBuilder.withDescription( "File with the output of 'git diff --name-status' to use instead of asking git for the changed files." ).hasArg().create( "changes" ) );
+        options.addOption( OptionBuilder.withDescription( "Only measures one of n parts of the files of about the same size, given as i/n." ).hasArg().create( "shard" ) );
+        options.addOption( OptionBuilder.withDescription( "Merges the given XML reports, e.g. of the shards of a run, instead of measuring source files." ).create( "merge" ) );
+        options.addOption( OptionBuilder.withDescription( "Measures each of this many commits up to -revision, reading the files from git (-package adds the packages)." ).hasArg().create( "history" ) );
        
         CommandLine cl;
 
@@ -654,57 +1570,151 @@ public class Javancss
             return;
         }
 
-        if ( cl.hasOption( "version" ) )
+        if ( cl.hasOption( "version" ) )
+        {
+            System.out.println( "JavaNCSS " + getClass().getPackage().getSpecificationVersion() + " by Chr. Clemens Lee & co" );
+            return;
+        }
+
+        if ( cl.hasOption( "debug" ) )
+        {
+            log.setLevel( Level.FINE );
+            // the trace listener logs what the parser does to its own logger
+            Logger.getLogger( JavaParser.class.getName() ).setLevel( Level.FINER );
+        }
+
+        setEncoding( cl.getOptionValue( "encoding" ) );
+        setXML( cl.hasOption( "xml" ) );
+        setStreaming( cl.hasOption( "stream" ) && useXML() );
+        setCompactFunctions( cl.hasOption( "compact" ) );
+        // the command line reuses parsers unless told otherwise, the API
+        // keeps the default of creating a new one for every file
+        setReuseParsers( !cl.hasOption( "noreuse" ) );
+        setDeduplicate( cl.hasOption( "dedup" ) );
+        setStatistics( cl.hasOption( "stats" ) );
+        setFast( cl.hasOption( "fast" ) && !cl.hasOption( "package" ) && !cl.hasOption( "object" )
+                 && !cl.hasOption( "function" ) && !cl.hasOption( "all" ) && !cl.hasOption( "gui" ) );
+
+        if ( cl.hasOption( "threads" ) )
+        {
+            try
+            {
+                setThreads( Integer.parseInt( cl.getOptionValue( "threads" ) ) );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                System.err.println( "javancss: invalid number of threads: " + cl.getOptionValue( "threads" ) );
+                System.err.println( "Try `javancss -help' for more information." );
+                return;
+            }
+        }
+
+        if ( cl.hasOption( "timeout" ) )
+        {
+            int value;
+            try
+            {
+                value = Integer.parseInt( cl.getOptionValue( "timeout" ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                value = -1;
+            }
+            if ( value < 0 )
+            {
+                System.err.println( "javancss: invalid timeout: " + cl.getOptionValue( "timeout" ) );
+                System.err.println( "Try `javancss -help' for more information." );
+                return;
+            }
+            setParseTimeout( value );
+        }
+
+        if ( cl.hasOption( "maxtokens" ) )
+        {
+            int value;
+            try
+            {
+                value = Integer.parseInt( cl.getOptionValue( "maxtokens" ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                value = -1;
+            }
+            if ( value < 0 )
+            {
+                System.err.println( "javancss: invalid number of tokens: " + cl.getOptionValue( "maxtokens" ) );
+                System.err.println( "Try `javancss -help' for more information." );
+                return;
+            }
+            setMaxTokens( value );
+        }
+
+        int historyCommits = 0;
+        if ( cl.hasOption( "history" ) )
+        {
+            try
+            {
+                historyCommits = Integer.parseInt( cl.getOptionValue( "history" ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                historyCommits = 0;
+            }
+            if ( historyCommits < 1 )
+            {
+                System.err.println( "javancss: invalid number of commits: " + cl.getOptionValue( "history" ) );
+                System.err.println( "Try `javancss -help' for more information." );
+                return;
+            }
+        }
+
+        if ( cl.hasOption( "grammarprofile" ) )
         {
-            System.out.println( "JavaNCSS " + getClass().getPackage().getSpecificationVersion() + " by Chr. Clemens Lee & co" );
-            return;
+            setGrammarProfileFile( new File( normalizeFileName( cl.getOptionValue( "grammarprofile" ) ) ) );
         }
 
-        if ( cl.hasOption( "debug" ) )
+        if ( cl.hasOption( "cache" ) )
         {
-            log.setLevel( Level.FINE );
+            setCacheDirectory( new File( normalizeFileName( cl.getOptionValue( "cache" ) ) ) );
         }
 
-        setEncoding( cl.getOptionValue( "encoding" ) );
-        setXML( cl.hasOption( "xml" ) );
-
-        // the arguments (the files) to be processed
-        _vJavaSourceFiles = findFiles( cl.getArgList(), cl.hasOption( "recursive" ) );
-
-        if ( cl.hasOption( "gui" ) )
+        int shard = 0;
+        int shards = 0;
+        if ( cl.hasOption( "shard" ) )
         {
+            String[] sShard = cl.getOptionValue( "shard" ).split( "/" );
             try
             {
-                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+                shard = Integer.parseInt( sShard[0] );
+                shards = sShard.length == 2 ? Integer.parseInt( sShard[1] ) : 0;
             }
-            catch ( Exception e )
+            catch ( NumberFormatException e )
             {
+                shards = 0;
             }
-
-            JavancssFrame pJavancssFrame = new JavancssFrame( cl.getArgList() );
-            /* final Thread pThread = Thread.currentThread(); */
-            pJavancssFrame.addWindowListener( new WindowAdapter()
+            if ( shard < 1 || shard > shards )
             {
-                @Override
-                public void windowClosing( WindowEvent event )
-                {
-                    setExit();
-                }
-            } );
-            pJavancssFrame.setVisible( true );
-
-            try
-            {
-                _measureRoot( newReader( System.in ) );
+                System.err.println( "javancss: invalid shard: " + cl.getOptionValue( "shard" ) );
+                System.err.println( "Try `javancss -help' for more information." );
+                return;
             }
-            catch ( Throwable pThrowable )
+        }
+
+        // the arguments (the files) to be processed
+        if ( !cl.hasOption( "merge" ) )
+        {
+            _vJavaSourceFiles = findFiles( cl.getArgList(), cl.hasOption( "recursive" ),
+                                           _optionValues( cl, "include" ), _optionValues( cl, "exclude" ) );
+            if ( shards > 0 )
             {
-                // shouldn't we print something here?
-                // error details have been written into lastError
+                _vJavaSourceFiles = SourceFinder.shard( _vJavaSourceFiles, shard, shards );
             }
+        }
 
-            pJavancssFrame.showJavancss( this );
-            pJavancssFrame.setSelectedTab( JavancssFrame.S_PACKAGES );
+        if ( cl.hasOption( "gui" ) )
+        {
+            // AWT and Swing are only loaded here, not for the command line
+            JavancssFrame.open( this, cl.getArgList() );
 
             return;
         }
@@ -712,7 +1722,44 @@ public class Javancss
         // this initiates the measurement
         try
         {
-            _measureRoot( newReader( System.in ) );
+            if ( historyCommits > 0 )
+            {
+                // the history is measured while it is printed
+            }
+            else if ( cl.hasOption( "merge" ) )
+            {
+                boolean all = cl.hasOption( "all" );
+                try
+                {
+                    _mergeReports( cl.getArgList(), all || cl.hasOption( "package" ), all || cl.hasOption( "object" ),
+                                   all || cl.hasOption( "function" ) );
+                }
+                catch ( IOException pIOException )
+                {
+                    _sErrorMessage = pIOException.getMessage();
+                    _thrwError = pIOException;
+                }
+            }
+            else if ( cl.hasOption( "baseline" ) )
+            {
+                boolean all = cl.hasOption( "all" );
+                try
+                {
+                    _measureChanges( new File( normalizeFileName( cl.getOptionValue( "baseline" ) ) ),
+                                     cl.getOptionValue( "revision", "HEAD" ), cl.getOptionValue( "changes" ),
+                                     _vJavaSourceFiles, all || cl.hasOption( "package" ),
+                                     all || cl.hasOption( "object" ), all || cl.hasOption( "function" ) );
+                }
+                catch ( IOException pIOException )
+                {
+                    _sErrorMessage = pIOException.getMessage();
+                    _thrwError = pIOException;
+                }
+            }
+            else
+            {
+                _measureRoot( newReader( System.in ) );
+            }
         }
         catch ( Throwable pThrowable )
         {
@@ -746,7 +1793,15 @@ public class Javancss
         final PrintWriter pw = useXML() ? new PrintWriter( new OutputStreamWriter( out, "UTF-8" ) ) : new PrintWriter( out );
         try {
 
-            format( pw, cl.hasOption( "package" ), cl.hasOption( "object" ), cl.hasOption( "function" ), cl.hasOption( "all" ) );
+            if ( historyCommits > 0 )
+            {
+                _printHistory( pw, cl.getOptionValue( "revision", "HEAD" ), historyCommits, cl.getArgList(),
+                               cl.hasOption( "package" ) || cl.hasOption( "all" ) );
+            }
+            else
+            {
+                format( pw, cl.hasOption( "package" ), cl.hasOption( "object" ), cl.hasOption( "function" ), cl.hasOption( "all" ) );
+            }
 
         } finally {
             if ( sOutputFile != null )
@@ -761,9 +1816,30 @@ public class Javancss
         }
     }
 
-    private void format( PrintWriter pw, boolean packages, boolean object, boolean function, boolean all )
+    private void _printHistory( PrintWriter pw, String sRevision, int commits, List<String> paths, boolean packages )
+    {
+        GitHistory history = new GitHistory( new File( System.getProperty( "user.dir" ) ), encoding, _threads );
+        try
+        {
+            history.print( pw, sRevision, commits, paths, useXML(), packages );
+            log.fine( "Javancss._printHistory(): " + history.getMeasuredBlobs() + " file versions measured" );
+        }
+        catch ( IOException pIOException )
+        {
+            _sErrorMessage = pIOException.getMessage();
+            _thrwError = pIOException;
+            System.err.println( _sErrorMessage );
+        }
+    }
+
+    /**
+     * Prints the selected sections of the results, if none is
+     * selected just the total NCSS.
+     */
+    void format( PrintWriter pw, boolean packages, boolean object, boolean function, boolean all )
         throws IOException
     {
+        long start = System.nanoTime();
         printStart( pw );
    
         boolean bNoNCSS = false;
@@ -794,6 +1870,11 @@ public class Javancss
         {
             printJavaNcss( pw );
         }
+        if ( _statistics != null )
+        {
+            // the formatters print the statistics at the end
+            _statistics.setFormattingTime( System.nanoTime() - start );
+        }
    
         printEnd( pw );
     }
@@ -803,6 +1884,23 @@ public class Javancss
         return _ncss;
     }
 
+    /**
+     * @return the number of source files which were not parsed, since
+     *         they are identical copies of a file measured before.
+     */
+    public int getDuplicateFiles()
+    {
+        return _duplicateFiles;
+    }
+
+    /**
+     * @return the total size of the duplicate files in bytes.
+     */
+    public long getDuplicateBytes()
+    {
+        return _duplicateBytes;
+    }
+
     public int getLOC()
     {
         return _loc;
@@ -810,26 +1908,28 @@ public class Javancss
 
     public int getJvdc()
     {
-        return _pJavaParser.getJvdc();
+        return _lastFileMetric == null ? 0 : _lastFileMetric.javadocs;
     }
 
     /**
      * JDCL stands for javadoc comment lines (while jvdc stands
      * for number of javadoc comments).
+     * Like the other comment counters, it refers to the last
+     * measured source.
      */
     public int getJdcl()
     {
-        return JavaParserTokenManager._iFormalComments;
+        return _lastFileMetric == null ? 0 : _lastFileMetric.javadocsLn;
     }
 
     public int getSl()
     {
-        return JavaParserTokenManager._iSingleComments;
+        return _lastFileMetric == null ? 0 : _lastFileMetric.singleLn;
     }
 
     public int getMl()
     {
-        return JavaParserTokenManager._iMultiComments;
+        return _lastFileMetric == null ? 0 : _lastFileMetric.multiLn;
     }
 
     public List<FunctionMetric> getFunctionMetrics()
@@ -882,12 +1982,245 @@ public class Javancss
     {
         if ( useXML() )
         {
+            if ( _streamingFormatter != null )
+            {
+                return _streamingFormatter;
+            }
             return new XmlFormatter( this );
         }
 
         return new AsciiFormatter( this );
     }
 
+    public int getThreads()
+    {
+        return _threads;
+    }
+
+    /**
+     * Sets the number of threads used to parse the source files.
+     * The results do not depend on this setting.
+     */
+    public void setThreads( int threads )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "threads must be at least 1: " + threads );
+        }
+        _threads = threads;
+    }
+
+    public boolean isStreaming()
+    {
+        return _bStreaming;
+    }
+
+    /**
+     * If set, the function and object metrics of the next measurement
+     * are written to temporary files for the XML output instead of being
+     * kept in memory, so getFunctionMetrics() and getObjectMetrics()
+     * stay empty. Only the XML formatter can print them, until its
+     * printEnd() has been called.
+     */
+    public void setStreaming( boolean bStreaming )
+    {
+        _bStreaming = bStreaming;
+    }
+
+    public boolean isKeepMetrics()
+    {
+        return _bKeepMetrics;
+    }
+
+    /**
+     * If not set, the function and object metrics of the next measurement
+     * are only passed to the metrics listeners, so getFunctionMetrics()
+     * and getObjectMetrics() stay empty. This saves the memory for them
+     * when they are processed by a listener anyway.
+     */
+    public void setKeepMetrics( boolean bKeepMetrics )
+    {
+        _bKeepMetrics = bKeepMetrics;
+    }
+
+    /**
+     * Adds a listener, which gets the metrics of each source file of
+     * the following measurements as soon as the file has been measured.
+     */
+    public void addMetricsListener( MetricsListener listener )
+    {
+        _vMetricsListeners.add( listener );
+    }
+
+    public void removeMetricsListener( MetricsListener listener )
+    {
+        _vMetricsListeners.remove( listener );
+    }
+
+    public boolean isCompactFunctions()
+    {
+        return _vFunctionMetrics instanceof FunctionMetricTable;
+    }
+
+    /**
+     * If set, the function metrics are kept in a compact table instead
+     * of one object per function, which needs a lot less memory for
+     * large code bases. The list returned by getFunctionMetrics() then
+     * creates a new FunctionMetric object for each element read.
+     */
+    public void setCompactFunctions( boolean bCompact )
+    {
+        if ( bCompact != isCompactFunctions() )
+        {
+            List<FunctionMetric> vFunctionMetrics = bCompact ? new FunctionMetricTable() : new ArrayList<FunctionMetric>();
+            vFunctionMetrics.addAll( _vFunctionMetrics );
+            _vFunctionMetrics = vFunctionMetrics;
+        }
+    }
+
+    public boolean isReuseParsers()
+    {
+        return _bReuseParsers;
+    }
+
+    /**
+     * If set, each thread keeps its parser and uses it again for the
+     * next source file instead of creating a new one for every file.
+     * The results are the same, it just saves time when measuring
+     * many small files.
+     */
+    public void setReuseParsers( boolean bReuseParsers )
+    {
+        _bReuseParsers = bReuseParsers;
+    }
+
+    public boolean isDeduplicate()
+    {
+        return _bDeduplicate;
+    }
+
+    /**
+     * If set, the content of each source file is hashed, and the
+     * metrics of the first file with the same content are repeated for
+     * identical copies instead of parsing them again. Off by default,
+     * as hashing every file costs more than it saves without copies.
+     */
+    public void setDeduplicate( boolean bDeduplicate )
+    {
+        _bDeduplicate = bDeduplicate;
+    }
+
+    public boolean isFast()
+    {
+        return _bFast;
+    }
+
+    /**
+     * If set, the source files are only scanned for the program NCSS,
+     * LOC and comment counts instead of being parsed completely, which
+     * is a lot faster. There are no function, object and package metrics
+     * then, and the javadoc lines might be attributed differently to
+     * the multi line comments.
+     */
+    public void setFast( boolean bFast )
+    {
+        _bFast = bFast;
+    }
+
+    public File getCacheDirectory()
+    {
+        return _cacheDirectory;
+    }
+
+    /**
+     * Sets the directory in which the metrics of each source file are
+     * kept between runs. Files which did not change since the last run
+     * are not parsed again. Null disables the cache, which is the default.
+     */
+    public void setCacheDirectory( File cacheDirectory )
+    {
+        _cacheDirectory = cacheDirectory;
+    }
+
+    public boolean isStatistics()
+    {
+        return _bStatistics;
+    }
+
+    /**
+     * If set, the next measurement collects statistics about where its
+     * time goes, which the formatters print at the end.
+     */
+    public void setStatistics( boolean bStatistics )
+    {
+        _bStatistics = bStatistics;
+    }
+
+    public File getGrammarProfileFile()
+    {
+        return _grammarProfileFile;
+    }
+
+    /**
+     * Sets the file the next measurement writes a profile of the
+     * grammar productions and lookaheads of the parser to. This needs
+     * the profiling build of the parser, otherwise the report just
+     * says so. Null disables the profile, which is the default.
+     */
+    public void setGrammarProfileFile( File grammarProfileFile )
+    {
+        _grammarProfileFile = grammarProfileFile;
+    }
+
+    /**
+     * @return the grammar profile of the last measurement, null if it
+     *         was not asked for.
+     */
+    public GrammarProfile getGrammarProfile()
+    {
+        return _grammarProfile;
+    }
+
+    /**
+     * @return the statistics of the last measurement, null if they
+     *         were not asked for.
+     */
+    public RunStatistics getRunStatistics()
+    {
+        return _statistics;
+    }
+
+    public int getParseTimeout()
+    {
+        return _parseTimeout;
+    }
+
+    /**
+     * Sets the time in seconds the parser may take for one source file.
+     * A file taking longer is given up and only counted by the quick
+     * token scan of the fast mode, so that a pathological source cannot
+     * hold up the run. 0 means no limit, which is the default.
+     */
+    public void setParseTimeout( int seconds )
+    {
+        _parseTimeout = seconds;
+    }
+
+    public int getMaxTokens()
+    {
+        return _maxTokens;
+    }
+
+    /**
+     * Sets the number of tokens the parser may read from one source
+     * file. A larger file is only counted by the quick token scan of
+     * the fast mode. 0 means no limit, which is the default.
+     */
+    public void setMaxTokens( int maxTokens )
+    {
+        _maxTokens = maxTokens;
+    }
+
     public String getEncoding()
     {
         return encoding;
@@ -910,6 +2243,111 @@ public class Javancss
         return newReader( new FileInputStream( file ) );
     }
 
+    /**
+     * Reads the whole file with as few system calls as possible.
+     */
+    private static byte[] readBytes( File file )
+        throws IOException
+    {
+        if ( file instanceof ArchiveEntry )
+        {
+            return ( (ArchiveEntry) file ).getContent();
+        }
+
+        FileInputStream in = new FileInputStream( file );
+        try
+        {
+            long size = in.getChannel().size();
+            if ( size > Integer.MAX_VALUE )
+            {
+                throw new IOException( "File too large: " + file.getAbsolutePath() );
+            }
+
+            return readBytes( in, (int) size );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the stream up to its end, expecting it to have the given
+     * size. The size may have changed since it was determined, e.g.
+     * because the file is being written to.
+     */
+    static byte[] readBytes( InputStream in, int size )
+        throws IOException
+    {
+        byte[] content = new byte[size];
+        int position = 0;
+        int read = 0;
+        while ( position < size && ( read = in.read( content, position, size - position ) ) != -1 )
+        {
+            position += read;
+        }
+        if ( position < size )
+        {
+            // the file shrank while reading it
+            byte[] bytes = new byte[position];
+            System.arraycopy( content, 0, bytes, 0, position );
+
+            return bytes;
+        }
+
+        int next = in.read();
+        if ( next != -1 )
+        {
+            // the file grew while reading it
+            return _readFully( in, content, next );
+        }
+
+        return content;
+    }
+
+    private static byte[] _readFully( InputStream in, byte[] start, int next )
+        throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream( start.length * 2 + 1 );
+        content.write( start );
+        content.write( next );
+        byte[] buffer = new byte[8192];
+        int read;
+        while ( ( read = in.read( buffer ) ) != -1 )
+        {
+            content.write( buffer, 0, read );
+        }
+
+        return content.toByteArray();
+    }
+
+    /**
+     * Decodes the source in one go with the configured encoding. Like
+     * with a reader, malformed input is replaced and not reported.
+     */
+    private CharBuffer _decode( byte[] content )
+        throws UnsupportedEncodingException
+    {
+        Charset charset;
+        try
+        {
+            charset = ( encoding == null ) ? Charset.defaultCharset() : Charset.forName( encoding );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new UnsupportedEncodingException( encoding );
+        }
+
+        return charset.decode( ByteBuffer.wrap( content ) );
+    }
+
+    private static List<String> _optionValues( CommandLine cl, String option )
+    {
+        String[] values = cl.getOptionValues( option );
+
+        return values == null ? Collections.<String>emptyList() : Arrays.asList( values );
+    }
+
     private String normalizeFileName( String filename )
     {
         String userdir = ( String ) System.getProperties().get( "user.dir" );
@@ -924,11 +2362,13 @@ public class Javancss
             filename = new File( userdir, filename ).getPath();
         }
 
+        // no need to ask the file system as getCanonicalPath() does,
+        // the path only has to be absolute and without "." and ".."
         try
         {
-            return new File( filename ).getCanonicalPath();
+            return new File( filename ).toPath().normalize().toString();
         }
-        catch ( IOException e )
+        catch ( InvalidPathException e )
         {
             return filename;
         }
@@ -25,9 +25,10 @@ package javancss;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import org.apache.tools.ant.BuildException;
@@ -189,6 +190,14 @@ public class JavancssAntTask extends MatchingTask {
      * Whether to generate a report.
      */
     private boolean generateReport = false;
+    /**
+     * Seconds the parser may take per source file, 0 for no limit.
+     */
+    private int parseTimeout = 0;
+    /**
+     * Tokens the parser may read per source file, 0 for no limit.
+     */
+    private int maxTokens = 0;
     /**
      * The JavaNCSS object containing details of the code whose metrics are
      * to be checked.
@@ -243,6 +252,26 @@ public class JavancssAntTask extends MatchingTask {
         this.generateReport = generateReport;
     }
 
+    /**
+     * Sets the time the parser may take for one source file. Files taking
+     * longer are only counted by a quick token scan, without function,
+     * class and package metrics. Default is 0, no limit.
+     * @param parseTimeout the time limit in seconds.
+     */
+    public void setParseTimeout(int parseTimeout) {
+        this.parseTimeout = parseTimeout;
+    }
+
+    /**
+     * Sets the number of tokens the parser may read from one source file.
+     * Larger files are only counted by a quick token scan, without
+     * function, class and package metrics. Default is 0, no limit.
+     * @param maxTokens the maximum number of tokens.
+     */
+    public void setMaxTokens(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
     /**
      * Sets the directory to be scanned by the tool. This should be the
      * directory containing the source files whose metrics are to be
@@ -329,18 +358,37 @@ public class JavancssAntTask extends MatchingTask {
             return SUCCESS;
         }
 
-        // result is in this.javancssArguments
+        // the files measured for the thresholds are not parsed again
+        Javancss javancss = getJavaNcss(fileList);
         log("Generating report");
-        if (outputfile != null) {
-            log("Report to be stored in " + outputfile.getPath(), Project.MSG_VERBOSE);
-        } else {
-            log("Report to be sent to standard output", Project.MSG_VERBOSE);
+        if (javancss.getLastErrorMessage() != null) {
+            log(javancss.getLastErrorMessage(), Project.MSG_ERR);
+            if (javancss.getNcss() <= 0) {
+                return FAILURE;
+            }
         }
-        String[] javancssArguments = getCommandLineArguments(fileList);
-        log("Executing: javancss " + Arrays.toString( javancssArguments ), Project.MSG_VERBOSE);
 
+        boolean xml = format.equals("xml");
+        javancss.setXML(xml);
         try {
-            Javancss javancss = new Javancss(javancssArguments);
+            OutputStream out;
+            if (outputfile != null) {
+                log("Report to be stored in " + outputfile.getPath(), Project.MSG_VERBOSE);
+                out = new FileOutputStream(outputfile);
+            } else {
+                log("Report to be sent to standard output", Project.MSG_VERBOSE);
+                out = System.out;
+            }
+            PrintWriter pw = xml ? new PrintWriter(new OutputStreamWriter(out, "UTF-8")) : new PrintWriter(out);
+            try {
+                javancss.format(pw, packageMetrics, classMetrics, functionMetrics, false);
+            } finally {
+                if (outputfile != null) {
+                    pw.close();
+                } else {
+                    pw.flush();
+                }
+            }
 
             if (javancss.getLastError() == null) {
                 return SUCCESS;
@@ -405,71 +453,6 @@ public class JavancssAntTask extends MatchingTask {
         return classpath.createPath();
     }
 
-    /**
-     * Gets the command line arguments to be sent to JavaNCSS.
-     * @param fileList a list of all source files to be analysed.
-     * @return the command line arguments to be sent to JavaNCSS.
-     */
-    private String[] getCommandLineArguments(List<File> fileList) {
-        List<String> arguments = new ArrayList<String>();
-
-        // Set metrics to be generated
-        if (packageMetrics) {
-            arguments.add("-package");
-        }
-        if (classMetrics) {
-            arguments.add("-object");
-        }
-        if (functionMetrics) {
-            arguments.add("-function");
-        }
-
-        // Set format of report
-        if (format.equals("xml")) {
-            arguments.add("-xml");
-        }
-
-        // Set location of report
-        if (outputfile != null) {
-            arguments.add("-out");
-            arguments.add(outputfile.getPath());
-        }
-
-        // Set source code to be processed
-        arguments.add("@" + createSourceListFile(fileList).getPath());
-
-        String[] javancssArguments = new String[arguments.size()];
-        for (int argument = 0; argument < arguments.size(); argument++) {
-            javancssArguments[argument] = arguments.get(argument);
-        }
-        return javancssArguments;
-    }
-
-    /**
-     * Creates a temporary file containing a list of all source files to be
-     * analysed.
-     * @param fileList the source files to be analysed.
-     * @return a file containing a list of all specified source files.
-     */
-    private File createSourceListFile(List<File> fileList) {
-        File srcListFile;
-        try {
-            srcListFile = File.createTempFile("srcList", null);
-            srcListFile.deleteOnExit();
-            FileOutputStream fos = new FileOutputStream(srcListFile);
-            PrintWriter pw = new PrintWriter(fos);
-            for (File file : fileList) {
-                log(file.toString(), 3);
-                pw.println(file.toString());
-            }
-            pw.close();
-            fos.close();
-        } catch (IOException e) {
-            throw new BuildException(e, getLocation());
-        }
-        return srcListFile;
-    }
-
     /**
      * Gets the JavaNCSS object containing details of the code whose metrics are
      * to be checked.
@@ -481,8 +464,11 @@ public class JavancssAntTask extends MatchingTask {
     {
         if (javancss == null)
         {
-            log("Checking metrics on " + fileList.size() + " files");
-            javancss = new Javancss(fileList);
+            log("Measuring metrics of " + fileList.size() + " files");
+            javancss = new Javancss();
+            javancss.setParseTimeout(parseTimeout);
+            javancss.setMaxTokens(maxTokens);
+            javancss.measure(fileList);
         }
         return javancss;
     }
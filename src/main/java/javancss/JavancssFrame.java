@@ -93,6 +93,33 @@ public class JavancssFrame extends JFrame {
         writer.close();
     }
 
+    /**
+     * Shows the frame for the given files and measures them with the
+     * given Javancss object. The command line only calls this for the
+     * <code>-gui</code> option, so AWT and Swing are not loaded otherwise.
+     */
+    static void open( final Javancss javancss, List<String> files ) throws IOException {
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch ( Exception e ) {
+        }
+
+        JavancssFrame pJavancssFrame = new JavancssFrame( files );
+        pJavancssFrame.addWindowListener( new WindowAdapter() {
+            @Override
+            public void windowClosing( WindowEvent event ) {
+                javancss.setExit();
+            }
+        } );
+        pJavancssFrame.setVisible( true );
+
+        // error details have been written into lastError
+        javancss.measureRoot();
+
+        pJavancssFrame.showJavancss( javancss );
+        pJavancssFrame.setSelectedTab( JavancssFrame.S_PACKAGES );
+    }
+
     public JavancssFrame( List<String> files )
     {
         super( "JavaNCSS: " + files );
@@ -37,6 +37,12 @@ public class Main
     {
         Locale.setDefault( Locale.US );
 
+        if ( args.length > 0 && ( args[0].equals( "-daemon" ) || args[0].equals( "--daemon" ) ) )
+        {
+            Daemon.main( args );
+            return;
+        }
+
         Javancss javancss = new Javancss( args );
 
         if ( javancss.getLastErrorMessage() != null )
@@ -0,0 +1,241 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import javancss.parser.JavaParser;
+import javancss.parser.JavaParserTokenManager;
+import javancss.parser.NcssScanner;
+
+/**
+ * Persistent cache of the metrics of single source files.
+ * There is one entry per source file path. An entry is only used
+ * if the content of the file, the JavaNCSS version, the classes of
+ * the parser and the encoding are the same as the ones it has been
+ * created with. Entries are replaced when their file is measured
+ * again, entries of files not measured any more are never removed.
+ *
+ * @version $Id$
+ */
+class MeasurementCache
+{
+    private static final String HASH_ALGORITHM = "SHA-1";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The classes which decide on the results, a development build
+     * has no version to tell a changed grammar.
+     */
+    private static final Class<?>[] PARSER_CLASSES = { JavaParser.class, JavaParserTokenManager.class, NcssScanner.class };
+
+    private static String _parserHash = null;
+
+    private final Logger log = Logger.getLogger( getClass().getName() );
+
+    private final File _directory;
+
+    /**
+     * Version, parser, encoding and the fast mode all have an effect on
+     * the results.
+     */
+    private final String _sSettings;
+
+    MeasurementCache( File directory, String encoding, boolean fast )
+        throws IOException
+    {
+        _directory = directory;
+        if ( !_directory.isDirectory() && !_directory.mkdirs() )
+        {
+            throw new IOException( "Cannot create cache directory: " + _directory.getAbsolutePath() );
+        }
+
+        String sVersion = getClass().getPackage().getImplementationVersion();
+        _sSettings = ( sVersion == null ? "development" : sVersion ) + '|' + _parserHash() + '|' + encoding
+            + ( fast ? "|fast" : "" );
+    }
+
+    private static synchronized String _parserHash()
+        throws IOException
+    {
+        if ( _parserHash == null )
+        {
+            MessageDigest digest = _newDigest();
+            byte[] buffer = new byte[8192];
+            for ( Class<?> parserClass : PARSER_CLASSES )
+            {
+                InputStream in = parserClass.getResourceAsStream( parserClass.getSimpleName() + ".class" );
+                if ( in == null )
+                {
+                    throw new IOException( "Cannot read class " + parserClass.getName() );
+                }
+                try
+                {
+                    for ( int read = in.read( buffer ); read >= 0; read = in.read( buffer ) )
+                    {
+                        digest.update( buffer, 0, read );
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            _parserHash = toHex( digest.digest() );
+        }
+
+        return _parserHash;
+    }
+
+    /**
+     * @param contentHash the {@link #hash(byte[])} of the content of the file.
+     * @return the cached metrics of the file or null, if there is
+     *         no entry for the file or the entry is stale.
+     */
+    FileMetric get( File file, byte[] contentHash )
+    {
+        File entryFile = _entryFile( file );
+        if ( !entryFile.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            ObjectInputStream in = new ObjectInputStream( new BufferedInputStream( new FileInputStream( entryFile ) ) );
+            try
+            {
+                if ( !_sSettings.equals( in.readObject() )
+                     || !Arrays.equals( contentHash, (byte[]) in.readObject() ) )
+                {
+                    return null;
+                }
+
+                return (FileMetric) in.readObject();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( Exception e )
+        {
+            // unreadable entries are just measured again and replaced
+            log.fine( "MeasurementCache.get().e: " + e );
+
+            return null;
+        }
+    }
+
+    /**
+     * Stores the metrics of the file. Failures are ignored, the
+     * file will just be measured again next time.
+     */
+    void put( File file, byte[] contentHash, FileMetric fileMetric )
+    {
+        File entryFile = _entryFile( file );
+        try
+        {
+            // write to a temporary file first, so that concurrent
+            // readers never see an incomplete entry
+            File tempFile = File.createTempFile( "entry", ".tmp", _directory );
+            ObjectOutputStream out = new ObjectOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) );
+            try
+            {
+                out.writeObject( _sSettings );
+                out.writeObject( contentHash );
+                out.writeObject( fileMetric );
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if ( !tempFile.renameTo( entryFile ) )
+            {
+                entryFile.delete();
+                if ( !tempFile.renameTo( entryFile ) )
+                {
+                    tempFile.delete();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            log.fine( "MeasurementCache.put().e: " + e );
+        }
+    }
+
+    private File _entryFile( File file )
+    {
+        try
+        {
+            return new File( _directory, toHex( hash( file.getAbsolutePath().getBytes( "UTF-8" ) ) ) + ".ser" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    static byte[] hash( byte[] content )
+    {
+        return _newDigest().digest( content );
+    }
+
+    private static MessageDigest _newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( HASH_ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            // every Java platform has to support SHA-1
+            throw new IllegalStateException( e );
+        }
+    }
+
+    static String toHex( byte[] bytes )
+    {
+        StringBuilder sb = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            sb.append( HEX_DIGITS[( b >> 4 ) & 0xf] ).append( HEX_DIGITS[b & 0xf] );
+        }
+
+        return sb.toString();
+    }
+}
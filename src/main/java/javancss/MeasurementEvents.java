@@ -0,0 +1,86 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+/**
+ * Events of a measurement for monitoring tools. This implementation
+ * records nothing. When JavaNCSS is built with Java 11 or later, the
+ * events go to JDK Flight Recorder instead, see FlightRecorderEvents,
+ * which is used if it can be loaded.
+ *
+ * @version $Id$
+ */
+class MeasurementEvents
+{
+    private static final MeasurementEvents INSTANCE = _load();
+
+    static MeasurementEvents get()
+    {
+        return INSTANCE;
+    }
+
+    private static MeasurementEvents _load()
+    {
+        try
+        {
+            return (MeasurementEvents) Class.forName( "javancss.FlightRecorderEvents" ).getDeclaredConstructor().newInstance();
+        }
+        catch ( Throwable e )
+        {
+            // not built with Java 11 or running on an older Java
+            return new MeasurementEvents();
+        }
+    }
+
+    /**
+     * Starts the event of measuring a source file.
+     *
+     * @return the event to be finished with fileMeasured(), null if it
+     *         is not recorded.
+     */
+    Object beginFile()
+    {
+        return null;
+    }
+
+    void fileMeasured( Object event, String path, long bytes, int tokens, int ncss )
+    {
+    }
+
+    void parseFailed( String path, String message )
+    {
+    }
+
+    /**
+     * Starts the event of printing a section of the results.
+     *
+     * @return the event to be finished with phaseFinished(), null if it
+     *         is not recorded.
+     */
+    Object beginPhase()
+    {
+        return null;
+    }
+
+    void phaseFinished( Object event, String phase )
+    {
+    }
+}
@@ -20,6 +20,8 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
 
 package javancss;
 
+import java.io.Serializable;
+
 /**
  * Base data class to store all metrics common to packages, objects and functions.
  *
@@ -27,8 +29,10 @@ package javancss;
  * @version $Id$
  */
 public abstract class Metric
-    implements Comparable<Metric>
+    implements Comparable<Metric>, Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     public String name = ".";
 
     /** Non Commenting Source Statements (NCSS). */
@@ -0,0 +1,57 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.File;
+
+/**
+ * Metrics listener with empty methods, to be extended by listeners
+ * that are only interested in some of the metrics.
+ *
+ * @version $Id$
+ */
+public abstract class MetricsAdapter
+    implements MetricsListener
+{
+    public void fileStarted( File file )
+    {
+    }
+
+    public void objectMeasured( ObjectMetric objectMetric )
+    {
+    }
+
+    public void functionMeasured( FunctionMetric functionMetric )
+    {
+    }
+
+    public void packageMeasured( PackageMetric packageMetric )
+    {
+    }
+
+    public void fileFinished( FileMetric fileMetric )
+    {
+    }
+
+    public void fileFailed( File file, String message, Throwable error )
+    {
+    }
+}
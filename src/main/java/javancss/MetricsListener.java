@@ -0,0 +1,79 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.File;
+
+/**
+ * Receives the metrics of each source file as soon as it has been
+ * measured, so that they can be processed while the other files are
+ * still being measured.
+ * <p>
+ * All methods are called on the thread that started the measurement,
+ * and the files are reported in the order they are measured in. When
+ * measuring with several threads, later files may already be started
+ * before the metrics of an earlier file are reported. The metric
+ * objects must not be changed.
+ *
+ * @see Javancss#addMetricsListener(MetricsListener)
+ * @see MetricsAdapter
+ * @version $Id$
+ */
+public interface MetricsListener
+{
+    /**
+     * The measurement of a source file starts.
+     *
+     * @param file the source file, null for standard input.
+     */
+    void fileStarted( File file );
+
+    /**
+     * A class, interface, enum or annotation type of the current file
+     * has been measured.
+     */
+    void objectMeasured( ObjectMetric objectMetric );
+
+    /**
+     * A method or constructor of the current file has been measured.
+     */
+    void functionMeasured( FunctionMetric functionMetric );
+
+    /**
+     * The contribution of the current file to a package has been
+     * measured. There is one call per package declared in the file.
+     */
+    void packageMeasured( PackageMetric packageMetric );
+
+    /**
+     * All metrics of a source file have been reported. The file
+     * metric contains them again, together with the file totals.
+     */
+    void fileFinished( FileMetric fileMetric );
+
+    /**
+     * A source file could not be read or parsed.
+     *
+     * @param file the source file, null for standard input.
+     * @param message the error message, as in {@link Javancss#getLastErrorMessage()}.
+     */
+    void fileFailed( File file, String message, Throwable error );
+}
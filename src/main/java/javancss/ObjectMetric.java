@@ -29,6 +29,8 @@ package javancss;
 public class ObjectMetric
     extends Metric
 {
+    private static final long serialVersionUID = 1L;
+
     /** Cyclomatic Complexity Number (McCabe metric) */
     public int ccn = 0;
     public int functions = 0;
@@ -29,6 +29,8 @@ package javancss;
 public class PackageMetric
     extends Metric
 {
+    private static final long serialVersionUID = 1L;
+
     public int classes = 0;
     public int functions = 0;
 
@@ -0,0 +1,98 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+package javancss;
+
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import javancss.parser.JavaCharStream;
+import javancss.parser.JavaParser;
+import javancss.parser.JavaParserInterface;
+
+/**
+ * Keeps one parser per thread to be used again for the next source,
+ * instead of creating a new parser, token manager and character
+ * buffer for every file. Its buffer is kept at the default size, and
+ * a measurement releases the parser of its thread when it is done.
+ *
+ * @version $Id$
+ */
+final class ParserPool
+{
+    private static final ThreadLocal<ParserPool> _pools = new ThreadLocal<ParserPool>();
+
+    private final JavaParserInterface _parser;
+    private final JavaCharStream _stream;
+
+    private ParserPool( JavaParserInterface parser, JavaCharStream stream )
+    {
+        _parser = parser;
+        _stream = stream;
+    }
+
+    /**
+     * @return a parser of the current thread, prepared to parse the
+     *         given source. It may only be used until the next call
+     *         from the same thread.
+     */
+    static JavaParserInterface getParser( CharBuffer source )
+    {
+        Reader reader = Javancss.newReader( source );
+
+        ParserPool pool = _pools.get();
+        if ( pool == null )
+        {
+            JavaCharStream stream = new JavaCharStream( reader, 1, 1 );
+            JavaParserInterface parser = new JavaParser( new BudgetTokenManager( stream ) );
+            _pools.set( new ParserPool( parser, stream ) );
+
+            return parser;
+        }
+
+        // a buffer the last source has made grow goes back to the
+        // default size
+        pool._stream.ReInit( reader, 1, 1 );
+        pool._parser.ReInit( pool._stream );
+
+        return pool._parser;
+    }
+
+    /**
+     * Drops the parser of the current thread if it is the given one,
+     * e.g. because it is still running on another thread.
+     */
+    static void discard( JavaParserInterface parser )
+    {
+        ParserPool pool = _pools.get();
+        if ( pool != null && pool._parser == parser )
+        {
+            _pools.remove();
+        }
+    }
+
+    /**
+     * Drops the parser of the current thread, so that a thread living
+     * on after a measurement does not keep it.
+     */
+    static void release()
+    {
+        _pools.remove();
+    }
+}
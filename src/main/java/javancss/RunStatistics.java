@@ -0,0 +1,379 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.Closeable;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Where the time of a run goes. The times of reading, lexing and
+ * parsing are summed up over all threads, so with several threads they
+ * add up to more than the time of the run. Lexing happens on demand
+ * of the parser, its time is not part of the parsing time here.
+ * All times are in nanoseconds.
+ *
+ * @version $Id$
+ */
+public class RunStatistics
+{
+    /** Number of slowest files kept. */
+    public static final int SLOWEST_FILES = 10;
+
+    /**
+     * Time it took to measure one source file.
+     */
+    public static class FileTime
+    {
+        private final String _path;
+        private final long _bytes;
+        private final long _time;
+
+        FileTime( String path, long bytes, long time )
+        {
+            _path = path;
+            _bytes = bytes;
+            _time = time;
+        }
+
+        public String getPath()
+        {
+            return _path;
+        }
+
+        public long getBytes()
+        {
+            return _bytes;
+        }
+
+        public long getTime()
+        {
+            return _time;
+        }
+    }
+
+    private static final Comparator<FileTime> BY_TIME = new Comparator<FileTime>()
+    {
+        public int compare( FileTime time1, FileTime time2 )
+        {
+            return Long.compare( time1._time, time2._time );
+        }
+    };
+
+    private int _threads = 1;
+    private int _files = 0;
+    private long _bytes = 0;
+    private long _tokens = 0;
+    private int _duplicateFiles = 0;
+    private long _duplicateBytes = 0;
+    private int _budgetExceededFiles = 0;
+
+    private long _start = System.nanoTime();
+    private long _time = 0;
+    private long _discoveryTime = 0;
+    private long _readingTime = 0;
+    private long _lexingTime = 0;
+    private long _parsingTime = 0;
+    private long _aggregationTime = 0;
+    private long _formattingTime = 0;
+    private long _peakHeap = 0;
+
+    /** The slowest files so far, the fastest of them first. */
+    private final PriorityQueue<FileTime> _slowestFiles = new PriorityQueue<FileTime>( SLOWEST_FILES + 1, BY_TIME );
+
+    RunStatistics( int threads )
+    {
+        _threads = threads;
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP )
+            {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private interface CloseableIterator
+        extends Iterator<File>, Closeable
+    {
+        void close();
+    }
+
+    /**
+     * @return the files, the time spent waiting for the next one is
+     *         added to the discovery time. Closing the iterator closes
+     *         the one of the given files.
+     */
+    Iterable<File> discover( final Iterable<File> files )
+    {
+        return new Iterable<File>()
+        {
+            public Iterator<File> iterator()
+            {
+                final Iterator<File> iterator = files.iterator();
+
+                return new CloseableIterator()
+                {
+                    public boolean hasNext()
+                    {
+                        long start = System.nanoTime();
+                        try
+                        {
+                            return iterator.hasNext();
+                        }
+                        finally
+                        {
+                            _discoveryTime += System.nanoTime() - start;
+                        }
+                    }
+
+                    public File next()
+                    {
+                        long start = System.nanoTime();
+                        try
+                        {
+                            return iterator.next();
+                        }
+                        finally
+                        {
+                            _discoveryTime += System.nanoTime() - start;
+                        }
+                    }
+
+                    public void remove()
+                    {
+                        iterator.remove();
+                    }
+
+                    public void close()
+                    {
+                        SourceFinder.close( iterator );
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Adds the times of one source file, which was read, but not
+     * necessarily parsed.
+     */
+    void addFile( File file, long bytes, long readingTime, long lexingTime, long parsingTime, long tokens )
+    {
+        _files++;
+        _bytes += bytes;
+        _tokens += tokens;
+        _readingTime += readingTime;
+        _lexingTime += lexingTime;
+        _parsingTime += parsingTime - lexingTime;
+
+        _slowestFiles.add( new FileTime( file.getPath(), bytes, readingTime + parsingTime ) );
+        if ( _slowestFiles.size() > SLOWEST_FILES )
+        {
+            _slowestFiles.poll();
+        }
+    }
+
+    void addDuplicate( long bytes )
+    {
+        _duplicateFiles++;
+        _duplicateBytes += bytes;
+    }
+
+    void addBudgetExceeded()
+    {
+        _budgetExceededFiles++;
+    }
+
+    void addAggregationTime( long time )
+    {
+        _aggregationTime += time;
+    }
+
+    /**
+     * Called at the end of the measurement.
+     */
+    void finish()
+    {
+        _time = System.nanoTime() - _start;
+        _peakHeap = 0;
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null )
+            {
+                _peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+    }
+
+    void setFormattingTime( long time )
+    {
+        _formattingTime = time;
+    }
+
+    public int getThreads()
+    {
+        return _threads;
+    }
+
+    /**
+     * @return the number of source files read, including duplicates.
+     */
+    public int getFiles()
+    {
+        return _files;
+    }
+
+    public long getBytes()
+    {
+        return _bytes;
+    }
+
+    /**
+     * @return the number of tokens read by the parser or scanner.
+     */
+    public long getTokens()
+    {
+        return _tokens;
+    }
+
+    /**
+     * @return the number of files not parsed since they were identical
+     *         to one measured before.
+     */
+    public int getDuplicateFiles()
+    {
+        return _duplicateFiles;
+    }
+
+    public long getDuplicateBytes()
+    {
+        return _duplicateBytes;
+    }
+
+    /**
+     * @return the number of files only counted by the scanner, since
+     *         they exceeded the parse timeout or the maximum number of
+     *         tokens.
+     */
+    public int getBudgetExceededFiles()
+    {
+        return _budgetExceededFiles;
+    }
+
+    /**
+     * @return the time of the whole measurement.
+     */
+    public long getTime()
+    {
+        return _time;
+    }
+
+    /**
+     * @return the time waiting for the next source file to be found.
+     */
+    public long getDiscoveryTime()
+    {
+        return _discoveryTime;
+    }
+
+    /**
+     * @return the time reading and decoding the source files.
+     */
+    public long getReadingTime()
+    {
+        return _readingTime;
+    }
+
+    public long getLexingTime()
+    {
+        return _lexingTime;
+    }
+
+    public long getParsingTime()
+    {
+        return _parsingTime;
+    }
+
+    /**
+     * @return the time adding the metrics of the files to the results.
+     */
+    public long getAggregationTime()
+    {
+        return _aggregationTime;
+    }
+
+    /**
+     * @return the time printing the results, up to the statistics.
+     */
+    public long getFormattingTime()
+    {
+        return _formattingTime;
+    }
+
+    /**
+     * @return the highest heap usage in bytes, summed up over the heap
+     *         memory pools.
+     */
+    public long getPeakHeap()
+    {
+        return _peakHeap;
+    }
+
+    public double getFilesPerSecond()
+    {
+        return _perSecond( _files );
+    }
+
+    public double getBytesPerSecond()
+    {
+        return _perSecond( _bytes );
+    }
+
+    public double getTokensPerSecond()
+    {
+        return _perSecond( _tokens );
+    }
+
+    private double _perSecond( long count )
+    {
+        return _time > 0 ? count * 1e9 / _time : 0.0;
+    }
+
+    /**
+     * @return the slowest files, the slowest first.
+     */
+    public List<FileTime> getSlowestFiles()
+    {
+        List<FileTime> vSlowestFiles = new ArrayList<FileTime>( _slowestFiles );
+        Collections.sort( vSlowestFiles, Collections.reverseOrder( BY_TIME ) );
+
+        return vSlowestFiles;
+    }
+}
@@ -0,0 +1,507 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+package javancss;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the Java source files in the given files and directories.
+ * Directories are walked in the background while the files found so
+ * far are already returned by the iterator, so that measuring can
+ * start before the walk is finished. The entries of each directory
+ * are walked sorted by name, so the files always come in the same
+ * order, whatever the order the file system lists them in.
+ * <p>
+ * Files found in directories can be selected with include and exclude
+ * patterns, which are matched against the path relative to the
+ * directory given, with '/' as separator. In these patterns '*' and
+ * '?' match within a directory, '**' across directories, and
+ * '{a,b}' matches one of the alternatives. A pattern starting with
+ * "**&#47;" also matches at the top of the directory. Directories
+ * matching an exclude pattern are not entered at all. Symbolic links
+ * are followed, links pointing back to a parent directory are skipped.
+ * <p>
+ * JAR and ZIP archives given are searched like directories. Their
+ * source files are read one after the other while walking, and are
+ * returned as {@link ArchiveEntry} objects with the content.
+ *
+ * @version $Id$
+ */
+class SourceFinder
+    implements Iterable<File>
+{
+    private static final Logger log = Logger.getLogger( SourceFinder.class.getName() );
+
+    /** Marks the end of the files in the queue. */
+    private static final File END = new File( "" );
+
+    /**
+     * Files found but not yet measured. Limits the content of archive
+     * entries held in memory.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final List<File> _roots;
+    private final List<Pattern> _includes = new ArrayList<Pattern>();
+    private final List<Pattern> _excludes = new ArrayList<Pattern>();
+
+    /**
+     * @param roots source files, which are always returned, and
+     *              directories to be searched for source files
+     */
+    SourceFinder( List<File> roots, List<String> includes, List<String> excludes )
+    {
+        _roots = roots;
+        for ( String include : includes )
+        {
+            _includes.add( toPattern( include ) );
+        }
+        for ( String exclude : excludes )
+        {
+            _excludes.add( toPattern( exclude ) );
+        }
+    }
+
+    /**
+     * Starts a new walk in the background. The iterator is
+     * {@link Closeable}, closing it stops the walk, see {@link #close(Iterator)}.
+     */
+    public Iterator<File> iterator()
+    {
+        return new Walk();
+    }
+
+    /**
+     * Stops the walk of the given iterator, if it is one of a source
+     * finder, e.g. because measuring stopped before all files were found.
+     * Otherwise the walker would wait forever for the files to be taken.
+     */
+    static void close( Iterator<File> files )
+    {
+        if ( files instanceof Closeable )
+        {
+            try
+            {
+                ( (Closeable) files ).close();
+            }
+            catch ( IOException e )
+            {
+                log.fine( "SourceFinder.close().e: " + e );
+            }
+        }
+    }
+
+    /**
+     * The files found by a walker thread, one walk per iterator.
+     */
+    private class Walk
+        implements Iterator<File>, Closeable
+    {
+        private final BlockingQueue<File> _queue = new LinkedBlockingQueue<File>( QUEUE_CAPACITY );
+
+        private final Thread _walker;
+
+        private File _next = null;
+
+        Walk()
+        {
+            _walker = new Thread( "javancss-source-finder" )
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( File root : _roots )
+                        {
+                            if ( root.isDirectory() )
+                            {
+                                _walk( root.toPath(), _queue );
+                            }
+                            else if ( ArchiveEntry.isArchive( root ) )
+                            {
+                                _readArchive( root, _queue );
+                            }
+                            else
+                            {
+                                _queue.put( root );
+                            }
+                        }
+                        _queue.put( END );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        // the iterator has been closed, nobody is
+                        // waiting for the files any more
+                    }
+                }
+            };
+            _walker.setDaemon( true );
+            _walker.start();
+        }
+
+        public boolean hasNext()
+        {
+            if ( _next == null )
+            {
+                try
+                {
+                    _next = _queue.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    _next = END;
+                }
+            }
+
+            return _next != END;
+        }
+
+        public File next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            File file = _next;
+            _next = null;
+
+            return file;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Stops the walker and drops the files found but not taken,
+         * with the content of archive entries.
+         */
+        public void close()
+        {
+            _walker.interrupt();
+            _queue.clear();
+            _next = END;
+        }
+    }
+
+    /**
+     * @return true if the given file would be found, given that it
+     *         exists. The file has to be absolute and normalized.
+     */
+    boolean contains( File file )
+    {
+        for ( File root : _roots )
+        {
+            if ( file.equals( root ) )
+            {
+                return true;
+            }
+
+            Path rootPath = root.toPath();
+            Path path = file.toPath();
+            if ( !path.startsWith( rootPath ) || !file.getName().endsWith( ".java" ) )
+            {
+                continue;
+            }
+
+            String relativePath = _relativePath( rootPath, path );
+            if ( !_isInExcludedDirectory( relativePath ) && _isIncluded( relativePath ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Splits the given files into shards of about the same total size,
+     * e.g. to measure them on several machines. The shards are
+     * consecutive parts of the files in the order given, so measuring
+     * the shards one after the other measures the files in the same
+     * order as a single run over all of them.
+     *
+     * @param index of the shard to return, from 1 to count
+     * @return the files of the shard, in the order given.
+     */
+    static List<File> shard( Iterable<File> files, int index, int count )
+    {
+        List<File> vFiles = new ArrayList<File>();
+        long total = 0;
+        for ( File file : files )
+        {
+            vFiles.add( file );
+            total += file.length();
+        }
+
+        List<File> vShard = new ArrayList<File>();
+        long before = 0;
+        for ( int i = 0; i < vFiles.size(); i++ )
+        {
+            File file = vFiles.get( i );
+            long size = file.length();
+            // a file belongs to the shard its middle falls into
+            int shard = total > 0 ? (int) ( ( 2 * before + size ) * count / ( 2 * total ) ) : i * count / vFiles.size();
+            if ( Math.min( shard, count - 1 ) == index - 1 )
+            {
+                vShard.add( file );
+            }
+            before += size;
+        }
+
+        return vShard;
+    }
+
+    private void _walk( Path root, BlockingQueue<File> queue )
+        throws InterruptedException
+    {
+        _walk( root, root, new ArrayList<Path>(), queue );
+    }
+
+    /**
+     * @param parents the real paths of the directories above, to skip
+     *                symbolic links pointing back to one of them.
+     */
+    private void _walk( Path root, Path dir, List<Path> parents, BlockingQueue<File> queue )
+        throws InterruptedException
+    {
+        List<Path> entries = new ArrayList<Path>();
+        Path realDir;
+        try
+        {
+            realDir = dir.toRealPath();
+            DirectoryStream<Path> stream = Files.newDirectoryStream( dir );
+            try
+            {
+                for ( Path entry : stream )
+                {
+                    entries.add( entry );
+                }
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            log.fine( "SourceFinder: cannot read " + dir + ": " + e );
+            return;
+        }
+        if ( parents.contains( realDir ) )
+        {
+            log.fine( "SourceFinder: skipping symbolic link loop at " + dir );
+            return;
+        }
+        Collections.sort( entries );
+
+        parents.add( realDir );
+        for ( Path entry : entries )
+        {
+            if ( Thread.interrupted() )
+            {
+                throw new InterruptedException();
+            }
+
+            String path = _relativePath( root, entry );
+            if ( Files.isDirectory( entry ) )
+            {
+                // "**/target" as well as "**/target/**" prune the directory
+                if ( !_matches( _excludes, path ) && !_matches( _excludes, path + '/' ) )
+                {
+                    _walk( root, entry, parents, queue );
+                }
+            }
+            else if ( entry.getFileName().toString().endsWith( ".java" ) && Files.isRegularFile( entry )
+                      && _isIncluded( path ) )
+            {
+                queue.put( entry.toFile() );
+            }
+        }
+        parents.remove( parents.size() - 1 );
+    }
+
+    /**
+     * Reads the source files of an archive in the order they are
+     * stored in, so the archive is read sequentially.
+     */
+    private void _readArchive( File archive, BlockingQueue<File> queue )
+        throws InterruptedException
+    {
+        ZipFile zipFile;
+        try
+        {
+            zipFile = new ZipFile( archive );
+        }
+        catch ( IOException e )
+        {
+            // reported when the archive is measured
+            queue.put( new ArchiveEntry( archive, e ) );
+            return;
+        }
+
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); )
+            {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if ( entry.isDirectory() || !name.endsWith( ".java" ) || !_isIncluded( name ) || _isInExcludedDirectory( name ) )
+                {
+                    continue;
+                }
+
+                InputStream in = zipFile.getInputStream( entry );
+                try
+                {
+                    queue.put( new ArchiveEntry( archive, name, ArchiveEntry.read( in, entry.getSize() ) ) );
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            queue.put( new ArchiveEntry( archive, e ) );
+        }
+        finally
+        {
+            try
+            {
+                zipFile.close();
+            }
+            catch ( IOException e )
+            {
+                log.fine( "SourceFinder._readArchive().e: " + e );
+            }
+        }
+    }
+
+    private boolean _isIncluded( String path )
+    {
+        return ( _includes.isEmpty() || _matches( _includes, path ) ) && !_matches( _excludes, path );
+    }
+
+    /**
+     * Archives have no directories to be skipped while walking, so the
+     * excluded directories are checked for each entry.
+     *
+     * @param path relative path with '/' as separator.
+     */
+    private boolean _isInExcludedDirectory( String path )
+    {
+        for ( int slash = path.indexOf( '/' ); slash > 0; slash = path.indexOf( '/', slash + 1 ) )
+        {
+            String dir = path.substring( 0, slash );
+            if ( _matches( _excludes, dir ) || _matches( _excludes, dir + '/' ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String _relativePath( Path root, Path path )
+    {
+        return root.relativize( path ).toString().replace( File.separatorChar, '/' );
+    }
+
+    private static boolean _matches( List<Pattern> patterns, String path )
+    {
+        for ( Pattern pattern : patterns )
+        {
+            if ( pattern.matcher( path ).matches() || pattern.matcher( '/' + path ).matches() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Translates a glob pattern into a regular expression.
+     */
+    static Pattern toPattern( String glob )
+    {
+        StringBuilder regex = new StringBuilder();
+        boolean alternatives = false;
+        for ( int i = 0; i < glob.length(); i++ )
+        {
+            char c = glob.charAt( i );
+            switch ( c )
+            {
+                case '*':
+                    if ( i + 1 < glob.length() && glob.charAt( i + 1 ) == '*' )
+                    {
+                        regex.append( ".*" );
+                        i++;
+                    }
+                    else
+                    {
+                        regex.append( "[^/]*" );
+                    }
+                    break;
+                case '?':
+                    regex.append( "[^/]" );
+                    break;
+                case '{':
+                    regex.append( "(?:" );
+                    alternatives = true;
+                    break;
+                case '}':
+                    regex.append( ')' );
+                    alternatives = false;
+                    break;
+                case ',':
+                    regex.append( alternatives ? "|" : "," );
+                    break;
+                default:
+                    regex.append( Pattern.quote( String.valueOf( c ) ) );
+            }
+        }
+
+        return Pattern.compile( regex.toString() );
+    }
+}
@@ -0,0 +1,284 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+
+package javancss;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Generates the same XML output as XmlFormatter, but without keeping
+ * the function and object metrics of the whole run in memory.
+ * As a metrics listener, it writes the records of each source file
+ * to temporary files as soon as the file has been measured, only the
+ * running totals for the averages are kept. Printing the objects and
+ * functions copies these temporary files to the output.
+ *
+ * @version $Id$
+ */
+class StreamingXmlFormatter
+    extends XmlFormatter
+    implements MetricsListener
+{
+    private static final String TEMP_ENCODING = "UTF-8";
+
+    private File _objectsFile = null;
+    private File _functionsFile = null;
+    private Writer _objectsWriter = null;
+    private Writer _functionsWriter = null;
+
+    /** First failure while writing the temporary files, reported when printing. */
+    private IOException _writeError = null;
+
+    private int _objects = 0;
+    private long _lObjectSum = 0;
+    private long _lObjectFunctionSum = 0;
+    private long _lClassesSum = 0;
+    private long _lObjectJVDCSum = 0;
+    private long _lJVDCSL = 0;
+    private long _lSinglel = 0;
+    private long _lMultil = 0;
+
+    private int _functions = 0;
+    private long _lFunctionSum = 0;
+    private long _lCCNSum = 0;
+    private long _lFunctionJVDCSum = 0;
+
+    private final Javancss _javancss;
+
+    StreamingXmlFormatter( Javancss javancss )
+        throws IOException
+    {
+        super( javancss );
+        _javancss = javancss;
+
+        _objectsFile = File.createTempFile( "javancss-objects", ".xml" );
+        _objectsFile.deleteOnExit();
+        _functionsFile = File.createTempFile( "javancss-functions", ".xml" );
+        _functionsFile.deleteOnExit();
+        _objectsWriter = _newWriter( _objectsFile );
+        _functionsWriter = _newWriter( _functionsFile );
+    }
+
+    private static Writer _newWriter( File file )
+        throws IOException
+    {
+        return new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), TEMP_ENCODING ) );
+    }
+
+    public void fileStarted( File file )
+    {
+    }
+
+    /**
+     * Records an object of the file being measured.
+     */
+    public void objectMeasured( ObjectMetric classMetric )
+    {
+        if ( _objectsWriter == null || _writeError != null )
+        {
+            return;
+        }
+
+        _objects++;
+        _lObjectSum += classMetric.ncss;
+        _lObjectFunctionSum += classMetric.functions;
+        _lClassesSum += classMetric.classes;
+        _lObjectJVDCSum += classMetric.javadocs;
+        _lJVDCSL += classMetric.javadocsLn;
+        _lSinglel += classMetric.singleLn;
+        _lMultil += classMetric.multiLn;
+
+        try
+        {
+            _objectsWriter.write( _formatObject( classMetric ) );
+        }
+        catch ( IOException e )
+        {
+            _writeError = e;
+        }
+    }
+
+    /**
+     * Records a function of the file being measured.
+     */
+    public void functionMeasured( FunctionMetric functionMetric )
+    {
+        if ( _functionsWriter == null || _writeError != null )
+        {
+            return;
+        }
+
+        _functions++;
+        _lFunctionSum += functionMetric.ncss;
+        _lCCNSum += functionMetric.ccn;
+        _lFunctionJVDCSum += functionMetric.javadocs;
+
+        try
+        {
+            _functionsWriter.write( _formatFunction( functionMetric ) );
+        }
+        catch ( IOException e )
+        {
+            _writeError = e;
+        }
+    }
+
+    public void packageMeasured( PackageMetric packageMetric )
+    {
+        // the packages are kept by Javancss
+    }
+
+    public void fileFinished( FileMetric fileMetric )
+    {
+    }
+
+    public void fileFailed( File file, String message, Throwable error )
+    {
+    }
+
+    private void _finishWriting()
+        throws IOException
+    {
+        if ( _objectsWriter != null )
+        {
+            Writer objectsWriter = _objectsWriter;
+            _objectsWriter = null;
+            objectsWriter.close();
+            _functionsWriter.close();
+        }
+        if ( _writeError != null )
+        {
+            throw _writeError;
+        }
+        if ( _objectsFile == null )
+        {
+            throw new IOException( "Streamed metrics have already been printed and deleted." );
+        }
+    }
+
+    private static void _copy( File file, Writer w )
+        throws IOException
+    {
+        Reader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), TEMP_ENCODING ) );
+        try
+        {
+            char[] buffer = new char[8192];
+            int read;
+            while ( ( read = reader.read( buffer ) ) != -1 )
+            {
+                w.write( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    @Override
+    public void printObjectNcss( Writer w )
+        throws IOException
+    {
+        _finishWriting();
+
+        w.write( "  <objects>\n" );
+        _copy( _objectsFile, w );
+        w.write( _formatObjectResume( _objects
+                , _lObjectSum
+                , _lObjectFunctionSum
+                , _lClassesSum
+                , _lObjectJVDCSum
+                , _lJVDCSL
+                , _lSinglel
+                , _lMultil
+                ) );
+        w.write( "  </objects>\n" );
+    }
+
+    @Override
+    public void printFunctionNcss( Writer w )
+        throws IOException
+    {
+        _finishWriting();
+
+        w.write( "  <functions>\n" );
+        _copy( _functionsFile, w );
+        w.write( _formatFunctionResume( _functions
+                                       , _lFunctionSum
+                                       , _lCCNSum
+                                       , _lFunctionJVDCSum
+                                       , _javancss.getJdcl()
+                                       , _javancss.getSl()
+                                       , _javancss.getMl()
+                                       ) );
+        w.write( "  </functions>\n" );
+    }
+
+    /**
+     * Ends the document and deletes the temporary files, the objects
+     * and functions can not be printed any more afterwards.
+     */
+    @Override
+    public void printEnd( Writer w )
+        throws IOException
+    {
+        super.printEnd( w );
+        dispose();
+    }
+
+    /**
+     * Deletes the temporary files.
+     */
+    void dispose()
+    {
+        try
+        {
+            if ( _objectsWriter != null )
+            {
+                _objectsWriter.close();
+                _functionsWriter.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // the files are deleted anyway
+        }
+        _objectsWriter = null;
+        _functionsWriter = null;
+
+        if ( _objectsFile != null )
+        {
+            _objectsFile.delete();
+            _functionsFile.delete();
+            _objectsFile = null;
+            _functionsFile = null;
+        }
+    }
+}
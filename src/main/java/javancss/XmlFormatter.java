@@ -252,7 +252,7 @@ public class XmlFormatter
         w.write( "  </packages>\n" );
     }
 
-    private String _formatObjectResume( int objects
+    String _formatObjectResume( int objects
                                         , long lObjectSum
                                         , long lFunctionSum
                                         , long lClassesSum
@@ -286,6 +286,20 @@ public class XmlFormatter
         return sRetVal;
     }
 
+    String _formatObject( ObjectMetric classMetric )
+    {
+        return "    <object>\n" +
+               "      <name>"      + classMetric.name      + "</name>\n"      +
+               "      <ncss>"      + classMetric.ncss      + "</ncss>\n"      +
+               "      <functions>" + classMetric.functions + "</functions>\n" +
+               "      <classes>"   + classMetric.classes   + "</classes>\n"   +
+               "      <javadocs>"  + classMetric.javadocs  + "</javadocs>\n"  +
+               "      <javadocs_lines>" + classMetric.javadocsLn + "</javadocs_lines>\n" +
+               "      <single_comment_lines>" + classMetric.singleLn + "</single_comment_lines>\n" +
+               "      <implementation_comment_lines>" + classMetric.multiLn + "</implementation_comment_lines>\n" +
+               "    </object>\n";
+    }
+
     public void printObjectNcss( Writer w )
         throws IOException
     {
@@ -306,7 +320,6 @@ public class XmlFormatter
 
         for ( ObjectMetric classMetric : vObjectMetrics )
         {
-            String sClass  = classMetric.name;
             int objectNcss = classMetric.ncss;
             int functions  = classMetric.functions;
             int classes    = classMetric.classes;
@@ -328,17 +341,7 @@ public class XmlFormatter
             lMultil += multil;
             //
 
-            w.write(
-                "    <object>\n" +
-                "      <name>"      + sClass     + "</name>\n"      +
-                "      <ncss>"      + objectNcss + "</ncss>\n"      +
-                "      <functions>" + functions  + "</functions>\n" +
-                "      <classes>"   + classes    + "</classes>\n"   +
-                "      <javadocs>"  + jvdcs      + "</javadocs>\n"  +
-                "      <javadocs_lines>" + jvdcsl + "</javadocs_lines>\n" +
-                "      <single_comment_lines>" + singlel + "</single_comment_lines>\n" +
-                "      <implementation_comment_lines>" + multil + "</implementation_comment_lines>\n" +
-                "    </object>\n" );
+            w.write( _formatObject( classMetric ) );
         }
 
         /* Removed by REYNAUD Sebastien (LOGICA)
@@ -369,7 +372,7 @@ public class XmlFormatter
         w.write( "  </objects>\n" );
     }
 
-    private String _formatFunctionResume( int functions
+    String _formatFunctionResume( int functions
                                           , long lFunctionSum
                                           , long lCCNSum
                                           , long lJVDCSum
@@ -401,22 +404,45 @@ public class XmlFormatter
         return sRetVal;
     }
 
+    String _formatFunction( FunctionMetric functionMetric )
+    {
+        return _formatFunction( functionMetric.name, functionMetric.ncss, functionMetric.ccn, functionMetric.javadocs );
+    }
+
+    String _formatFunction( String sFunction, int functionNcss, int functionCCN, int functionJVDC )
+    {
+        return "    <function>\n" +
+               "      <name>" + sFunction + "</name>\n" +
+               "      <ncss>" + functionNcss + "</ncss>\n" +
+               "      <ccn>"  + functionCCN  + "</ccn>\n"  +
+               "      <javadocs>" + functionJVDC + "</javadocs>\n" +
+               //"      <javadocs_lines>" + functionJVDCL + "</javadocs_lines>\n" +
+               //"      <single_comment_lines>" + functionSL + "</single_comment_lines>\n" +
+               //"      <implementation_comment_lines>" + functionML + "</implementation_comment_lines>\n" +
+               "    </function>\n";
+    }
+
     public void printFunctionNcss( Writer w )
         throws IOException
     {
         w.write( "  <functions>\n" );
 
         List<FunctionMetric> vFunctionMetrics = _javancss.getFunctionMetrics();
+        // a compact table is read column by column, without a
+        // FunctionMetric per function
+        FunctionMetricTable table = vFunctionMetrics instanceof FunctionMetricTable
+            ? (FunctionMetricTable) vFunctionMetrics : null;
 
         long lFunctionSum = 0;
         long lCCNSum      = 0;
         long lJVDCSum     = 0;
-        for ( FunctionMetric functionMetric : vFunctionMetrics )
+        for ( int i = 0; i < vFunctionMetrics.size(); i++ )
         {
-            String sFunction = functionMetric.name;
-            int functionNcss = functionMetric.ncss;
-            int functionCCN  = functionMetric.ccn;
-            int functionJVDC = functionMetric.javadocs;
+            FunctionMetric functionMetric = table == null ? vFunctionMetrics.get( i ) : null;
+            String sFunction = table == null ? functionMetric.name : table.getName( i );
+            int functionNcss = table == null ? functionMetric.ncss : table.getNcss( i );
+            int functionCCN  = table == null ? functionMetric.ccn : table.getCcn( i );
+            int functionJVDC = table == null ? functionMetric.javadocs : table.getJavadocs( i );
 
             // added by SMS
             //int functionJVDCL        = ((Integer)vSingleFunctionMetrics.elementAt(FCT_JVDC_LINES)).intValue();
@@ -427,16 +453,7 @@ public class XmlFormatter
             lFunctionSum += functionNcss;
             lCCNSum      += functionCCN;
             lJVDCSum     += functionJVDC;
-            w.write(
-                           "    <function>\n" +
-                           "      <name>" + sFunction + "</name>\n" +
-                           "      <ncss>" + functionNcss + "</ncss>\n" +
-                           "      <ccn>"  + functionCCN  + "</ccn>\n"  +
-                           "      <javadocs>" + functionJVDC + "</javadocs>\n" +
-                           //"      <javadocs_lines>" + functionJVDCL + "</javadocs_lines>\n" +
-                           //"      <single_comment_lines>" + functionSL + "</single_comment_lines>\n" +
-                           //"      <implementation_comment_lines>" + functionML + "</implementation_comment_lines>\n" +
-                           "    </function>\n" );
+            w.write( _formatFunction( sFunction, functionNcss, functionCCN, functionJVDC ) );
         }
 
         w.write( _formatFunctionResume( vFunctionMetrics.size()
@@ -475,6 +492,58 @@ public class XmlFormatter
     public void printEnd( Writer w )
         throws IOException
     {
+        if ( _javancss.getRunStatistics() != null )
+        {
+            printStatistics( w, _javancss.getRunStatistics() );
+        }
         w.write( "</javancss>\n" );
     }
+
+    /**
+     * Times in milliseconds, sizes in bytes.
+     */
+    void printStatistics( Writer w, RunStatistics statistics )
+        throws IOException
+    {
+        w.write( "  <statistics>\n" );
+        w.write( "    <threads>" + statistics.getThreads() + "</threads>\n" );
+        w.write( "    <files>" + statistics.getFiles() + "</files>\n" );
+        w.write( "    <bytes>" + statistics.getBytes() + "</bytes>\n" );
+        w.write( "    <tokens>" + statistics.getTokens() + "</tokens>\n" );
+        w.write( "    <duplicate_files>" + statistics.getDuplicateFiles() + "</duplicate_files>\n" );
+        w.write( "    <duplicate_bytes>" + statistics.getDuplicateBytes() + "</duplicate_bytes>\n" );
+        w.write( "    <budget_exceeded_files>" + statistics.getBudgetExceededFiles() + "</budget_exceeded_files>\n" );
+        w.write( "    <time>" + _millis( statistics.getTime() ) + "</time>\n" );
+        w.write( String.format( Locale.US, "    <files_per_second>%.2f</files_per_second>\n", statistics.getFilesPerSecond() ) );
+        w.write( String.format( Locale.US, "    <bytes_per_second>%.2f</bytes_per_second>\n", statistics.getBytesPerSecond() ) );
+        w.write( String.format( Locale.US, "    <tokens_per_second>%.2f</tokens_per_second>\n", statistics.getTokensPerSecond() ) );
+        w.write( "    <discovery_time>" + _millis( statistics.getDiscoveryTime() ) + "</discovery_time>\n" );
+        w.write( "    <reading_time>" + _millis( statistics.getReadingTime() ) + "</reading_time>\n" );
+        w.write( "    <lexing_time>" + _millis( statistics.getLexingTime() ) + "</lexing_time>\n" );
+        w.write( "    <parsing_time>" + _millis( statistics.getParsingTime() ) + "</parsing_time>\n" );
+        w.write( "    <aggregation_time>" + _millis( statistics.getAggregationTime() ) + "</aggregation_time>\n" );
+        w.write( "    <formatting_time>" + _millis( statistics.getFormattingTime() ) + "</formatting_time>\n" );
+        w.write( "    <peak_heap>" + statistics.getPeakHeap() + "</peak_heap>\n" );
+        w.write( "    <slowest_files>\n" );
+        for ( RunStatistics.FileTime fileTime : statistics.getSlowestFiles() )
+        {
+            w.write( "      <file>\n" );
+            w.write( "        <name>" + _escape( fileTime.getPath() ) + "</name>\n" );
+            w.write( "        <bytes>" + fileTime.getBytes() + "</bytes>\n" );
+            w.write( "        <time>" + _millis( fileTime.getTime() ) + "</time>\n" );
+            w.write( "      </file>\n" );
+        }
+        w.write( "    </slowest_files>\n" );
+        w.write( "  </statistics>\n" );
+    }
+
+    private static String _millis( long nanos )
+    {
+        return String.format( Locale.US, "%.2f", nanos / 1e6 );
+    }
+
+    private static String _escape( String text )
+    {
+        return text.replace( "&", "&amp;" ).replace( "<", "&lt;" ).replace( ">", "&gt;" );
+    }
 }
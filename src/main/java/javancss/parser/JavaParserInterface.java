@@ -4,7 +4,9 @@ import java.util.List;
 import java.util.Map;
 
 import javancss.FunctionMetric;
+import javancss.ImportInfo;
 import javancss.ObjectMetric;
+import javancss.PackageInfo;
 import javancss.PackageMetric;
 
 public interface JavaParserInterface
@@ -13,6 +15,17 @@ public interface JavaParserInterface
 
     void parseImportUnit() throws Exception;
 
+    /**
+     * Prepares the parser for the next source and resets all metrics.
+     */
+    void ReInit( JavaCharStream stream );
+
+    /**
+     * @param listener gets told what the parser does, null for nothing
+     *        which is the default.
+     */
+    void setTraceListener( ParserTraceListener listener );
+
     int getNcss();
 
     int getLOC();
@@ -20,6 +33,21 @@ public interface JavaParserInterface
     // added by SMS
     int getJvdc();
 
+    /**
+     * @return Number of javadoc comment lines read by this parser.
+     */
+    int getJdcl();
+
+    /**
+     * @return Number of single line comments read by this parser.
+     */
+    int getSl();
+
+    /**
+     * @return Number of multi line comment lines read by this parser.
+     */
+    int getMl();
+
     /*public int getTopLevelClasses() {
       return _topLevelClasses;
       }*/
@@ -36,12 +64,12 @@ public interface JavaParserInterface
      */
     Map<String, PackageMetric> getPackage();
 
-    List<Object[]> getImports();
+    List<ImportInfo> getImports();
 
     /**
-     * name, beginLine, ...
+     * @return The package declaration, or null if there is none.
      */
-    Object[] getPackageObjects();
+    PackageInfo getPackageInfo();
 
     /**
      * if javancss is used with cat *.java a long
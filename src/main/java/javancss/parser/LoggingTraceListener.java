@@ -0,0 +1,57 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss.parser;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs the events of the parser at level FINER, its LOOKAHEADs at
+ * level FINEST.
+ *
+ * @version $Id$
+ */
+public class LoggingTraceListener
+    implements ParserTraceListener
+{
+    private final Logger log = Logger.getLogger( JavaParser.class.getName() );
+
+    public void event( String event, Token token )
+    {
+        if ( log.isLoggable( Level.FINER ) )
+        {
+            log.finer( token == null ? event : event + ": " + token.image + " at line " + token.beginLine );
+        }
+    }
+
+    public void lookaheadStarted()
+    {
+    }
+
+    public void lookahead( String production, int first, int last, boolean matched, Token token, Token scanned )
+    {
+        if ( log.isLoggable( Level.FINEST ) )
+        {
+            log.finest( production + " LOOKAHEAD " + last + ( matched ? " matched" : " failed" )
+                        + ( scanned == null ? "" : " at line " + scanned.beginLine + ": " + scanned.image ) );
+        }
+    }
+}
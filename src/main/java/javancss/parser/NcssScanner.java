@@ -0,0 +1,845 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss.parser;
+
+import java.io.Reader;
+
+/**
+ * Counts NCSS, lines and comments of a compilation unit with a token
+ * scan instead of the full grammar. Only the structure needed for the
+ * counting rules of JavaParser is recognized: declarations and
+ * statements. Expressions are skipped by matching brackets, apart from
+ * the bodies of anonymous classes.
+ * This is much cheaper than parsing, but it does not check the syntax
+ * and does not collect function, object or package metrics. Only
+ * brackets which do not match are reported as errors.
+ *
+ * @version $Id$
+ */
+public class NcssScanner
+    implements JavaParserConstants
+{
+    /** Kinds of declaration lists, they differ in what gets counted. */
+    private static final int IN_UNIT = 0;
+    /** ClassBodyDeclaration */
+    private static final int IN_CLASS = 1;
+    /** InterfaceMemberDeclaration */
+    private static final int IN_INTERFACE = 2;
+    /** ClassOrInterfaceBodyDeclaration, used in enums: fields are not counted */
+    private static final int IN_MEMBERS = 3;
+    /** AnnotationTypeMemberDeclaration */
+    private static final int IN_ANNOTATION = 4;
+
+    private final JavaParserTokenManager _tokenSource;
+
+    /** The next token to be consumed. */
+    private Token _token = null;
+
+    /** The last consumed token, what the parser gets from getToken( 0 ). */
+    private Token _previous = new Token();
+
+    private int _ncss = 0;
+    private int _loc = 0;
+    private int _jvdc = 0;
+    private int _jvdcLines = 0;
+
+    /** Open brackets of each kind, negative if one was closed too much. */
+    private int _parens = 0;
+    private int _brackets = 0;
+    private int _braces = 0;
+    private Token _unbalanced = null;
+
+    public NcssScanner( Reader reader )
+    {
+        this( new JavaParserTokenManager( new JavaCharStream( reader ) ) );
+    }
+
+    public NcssScanner( JavaParserTokenManager tokenSource )
+    {
+        _tokenSource = tokenSource;
+    }
+
+    public void scan()
+        throws ParseException
+    {
+        _tokenSource.resetCounters();
+        _previous = new Token();
+        _parens = _brackets = _braces = 0;
+        _unbalanced = null;
+        _token = _tokenSource.getNextToken();
+
+        while ( _token.kind != EOF )
+        {
+            if ( _token.kind == PACKAGE || _token.kind == IMPORT )
+            {
+                _next();
+                _skipExpression( SEMICOLON );
+                _expect( SEMICOLON );
+                _ncss++;
+            }
+            else if ( _token.kind == AT && _isPackageDeclaration() )
+            {
+                _skipModifiers();
+            }
+            else
+            {
+                _member( IN_UNIT );
+            }
+        }
+
+        _loc = _token.endLine;
+
+        // structure skipped token by token still has to be balanced
+        if ( _unbalanced != null )
+        {
+            throw new ParseException( "Unbalanced \"" + _unbalanced.image + "\" at line " + _unbalanced.beginLine
+                                      + ", column " + _unbalanced.beginColumn + "." );
+        }
+        if ( _parens != 0 || _brackets != 0 || _braces != 0 )
+        {
+            throw new ParseException( "Unbalanced brackets at the end of file at line " + _token.beginLine + "." );
+        }
+    }
+
+    public int getNcss()
+    {
+        return _ncss;
+    }
+
+    public int getLOC()
+    {
+        return _loc;
+    }
+
+    public int getJvdc()
+    {
+        return _jvdc;
+    }
+
+    /**
+     * @return Number of javadoc comment lines.
+     */
+    public int getJdcl()
+    {
+        return _jvdcLines;
+    }
+
+    /**
+     * @return Number of single line comments.
+     */
+    public int getSl()
+    {
+        return _tokenSource._iSingleComments;
+    }
+
+    /**
+     * @return Number of multi line comment lines, without javadocs.
+     */
+    public int getMl()
+    {
+        return _tokenSource._iMultiComments - _jvdcLines;
+    }
+
+    private Token _next()
+    {
+        Token token = _token;
+        if ( token.next == null )
+        {
+            token.next = _tokenSource.getNextToken();
+        }
+        _previous = token;
+        _token = token.next;
+        switch ( token.kind )
+        {
+            case LPAREN:
+                _parens++;
+                break;
+            case RPAREN:
+                _balance( --_parens, token );
+                break;
+            case LBRACKET:
+                _brackets++;
+                break;
+            case RBRACKET:
+                _balance( --_brackets, token );
+                break;
+            case LBRACE:
+                _braces++;
+                break;
+            case RBRACE:
+                _balance( --_braces, token );
+                break;
+            default:
+        }
+
+        return token;
+    }
+
+    private void _balance( int open, Token token )
+    {
+        if ( open < 0 && _unbalanced == null )
+        {
+            _unbalanced = token;
+        }
+    }
+
+    private Token _peek( int distance )
+    {
+        Token token = _token;
+        for ( int i = 0; i < distance; i++ )
+        {
+            if ( token.next == null )
+            {
+                token.next = _tokenSource.getNextToken();
+            }
+            token = token.next;
+        }
+
+        return token;
+    }
+
+    private void _expect( int kind )
+        throws ParseException
+    {
+        if ( _token.kind != kind )
+        {
+            throw _unexpected();
+        }
+        _next();
+    }
+
+    private ParseException _unexpected()
+    {
+        if ( _token.kind == EOF )
+        {
+            return new ParseException( "Unexpected end of file at line " + _token.beginLine + "." );
+        }
+
+        return new ParseException( "Encountered \"" + _token.image + "\" at line " + _token.beginLine
+                                   + ", column " + _token.beginColumn + "." );
+    }
+
+    private static boolean _isModifier( int kind )
+    {
+        switch ( kind )
+        {
+            case PUBLIC:
+            case PROTECTED:
+            case PRIVATE:
+            case STATIC:
+            case ABSTRACT:
+            case FINAL:
+            case NATIVE:
+            case SYNCHRONIZED:
+            case TRANSIENT:
+            case VOLATILE:
+            case TESTAAAA:
+            case _DEFAULT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the distance of the first token after the modifiers and
+     *         annotations starting at the given distance.
+     */
+    private int _skipModifiersAhead( int distance )
+    {
+        while ( true )
+        {
+            Token token = _peek( distance );
+            if ( _isModifier( token.kind ) )
+            {
+                distance++;
+            }
+            else if ( token.kind == AT && _peek( distance + 1 ).kind != INTERFACE )
+            {
+                distance += 2;
+                while ( _peek( distance ).kind == DOT )
+                {
+                    distance += 2;
+                }
+                if ( _peek( distance ).kind == LPAREN )
+                {
+                    int depth = 0;
+                    do
+                    {
+                        int kind = _peek( distance ).kind;
+                        if ( kind == LPAREN )
+                        {
+                            depth++;
+                        }
+                        else if ( kind == RPAREN )
+                        {
+                            depth--;
+                        }
+                        else if ( kind == EOF )
+                        {
+                            return distance;
+                        }
+                        distance++;
+                    }
+                    while ( depth > 0 );
+                }
+            }
+            else
+            {
+                return distance;
+            }
+        }
+    }
+
+    private boolean _isPackageDeclaration()
+    {
+        return _peek( _skipModifiersAhead( 0 ) ).kind == PACKAGE;
+    }
+
+    private void _skipModifiers()
+        throws ParseException
+    {
+        while ( true )
+        {
+            if ( _isModifier( _token.kind ) )
+            {
+                _next();
+            }
+            else if ( _token.kind == AT && _peek( 1 ).kind != INTERFACE )
+            {
+                _skipAnnotation();
+            }
+            else
+            {
+                return;
+            }
+        }
+    }
+
+    private void _skipAnnotation()
+        throws ParseException
+    {
+        _expect( AT );
+        _expect( IDENTIFIER );
+        while ( _token.kind == DOT )
+        {
+            _next();
+            _expect( IDENTIFIER );
+        }
+        if ( _token.kind == LPAREN )
+        {
+            _skipParens();
+        }
+    }
+
+    private void _skipParens()
+        throws ParseException
+    {
+        _expect( LPAREN );
+        _skipExpression( RPAREN );
+        _expect( RPAREN );
+    }
+
+    /**
+     * Skips tokens up to the given kind outside of any brackets.
+     * The bodies of anonymous classes are counted on the way.
+     */
+    private void _skipExpression( int terminator )
+        throws ParseException
+    {
+        int hooks = 0;
+        while ( _token.kind != terminator || ( terminator == COLON && hooks > 0 ) )
+        {
+            switch ( _token.kind )
+            {
+                case LPAREN:
+                    _skipParens();
+                    if ( _token.kind == LBRACE )
+                    {
+                        // "new Name( Arguments ) ClassBody"
+                        _body( IN_CLASS );
+                    }
+                    break;
+                case LBRACKET:
+                    _next();
+                    _skipExpression( RBRACKET );
+                    _expect( RBRACKET );
+                    break;
+                case LBRACE:
+                    // array initializer
+                    _next();
+                    _skipExpression( RBRACE );
+                    _expect( RBRACE );
+                    break;
+                case HOOK:
+                    hooks++;
+                    _next();
+                    break;
+                case COLON:
+                    hooks--;
+                    _next();
+                    break;
+                case RPAREN:
+                case RBRACKET:
+                case RBRACE:
+                case EOF:
+                    throw _unexpected();
+                default:
+                    _next();
+            }
+        }
+    }
+
+    /**
+     * Skips everything up to the body of a type or method.
+     */
+    private void _skipToBody( boolean orSemicolon )
+        throws ParseException
+    {
+        while ( _token.kind != LBRACE && !( orSemicolon && _token.kind == SEMICOLON ) )
+        {
+            if ( _token.kind == LPAREN )
+            {
+                _skipParens();
+            }
+            else if ( _token.kind == EOF || _token.kind == RBRACE || _token.kind == SEMICOLON )
+            {
+                throw _unexpected();
+            }
+            else
+            {
+                _next();
+            }
+        }
+    }
+
+    /**
+     * Counts a javadoc comment in front of the given token the way
+     * the parser does it for classes, interfaces, methods and fields.
+     */
+    private void _javadoc( Token first )
+    {
+        for ( Token special = first.specialToken; special != null; special = special.specialToken )
+        {
+            if ( special.image.startsWith( "/**" ) )
+            {
+                _jvdc++;
+                // each line of a multi line comment is a special token
+                for ( Token line = special; line != null; line = line.next )
+                {
+                    _jvdcLines++;
+                    if ( line.kind == MULTI_LINE_COMMENT )
+                    {
+                        break;
+                    }
+                }
+                return;
+            }
+            if ( special.image.startsWith( "/*" ) )
+            {
+                return;
+            }
+        }
+    }
+
+    private void _body( int context )
+        throws ParseException
+    {
+        _expect( LBRACE );
+        while ( _token.kind != RBRACE )
+        {
+            _member( context );
+        }
+        _next();
+    }
+
+    private void _enumBody()
+        throws ParseException
+    {
+        _expect( LBRACE );
+        _ncss++;
+        while ( _token.kind != SEMICOLON && _token.kind != RBRACE )
+        {
+            _skipModifiers();
+            _expect( IDENTIFIER );
+            if ( _token.kind == LPAREN )
+            {
+                _skipParens();
+            }
+            if ( _token.kind == LBRACE )
+            {
+                _ncss++;
+                _body( IN_MEMBERS );
+            }
+            if ( _token.kind == COMMA )
+            {
+                _next();
+            }
+            else if ( _token.kind != SEMICOLON && _token.kind != RBRACE )
+            {
+                throw _unexpected();
+            }
+        }
+        if ( _token.kind == SEMICOLON )
+        {
+            _next();
+            while ( _token.kind != RBRACE )
+            {
+                _member( IN_MEMBERS );
+            }
+        }
+        _next();
+    }
+
+    /**
+     * One declaration in a compilation unit or in the body of a type.
+     */
+    private void _member( int context )
+        throws ParseException
+    {
+        if ( _token.kind == SEMICOLON )
+        {
+            _next();
+            if ( context == IN_ANNOTATION )
+            {
+                _ncss++;
+            }
+            return;
+        }
+        if ( context != IN_UNIT
+             && ( _token.kind == LBRACE || ( _token.kind == STATIC && _peek( 1 ).kind == LBRACE ) ) )
+        {
+            // initializer
+            if ( _token.kind == STATIC )
+            {
+                _next();
+            }
+            _ncss++;
+            _block();
+            return;
+        }
+
+        Token first = _token;
+        boolean declaration = context == IN_UNIT || context == IN_CLASS || context == IN_INTERFACE;
+        _skipModifiers();
+        // the parser looks for the javadoc of a field in front of the
+        // last modifier, or in front of the previous token if there is none
+        Token beforeType = _previous;
+        switch ( _token.kind )
+        {
+            case CLASS:
+            case INTERFACE:
+                if ( declaration )
+                {
+                    // modifiers of interfaces nested in classes are
+                    // consumed before the parser looks for the javadoc
+                    _javadoc( context == IN_CLASS && _token.kind == INTERFACE ? _token : first );
+                }
+                int bodyContext = _token.kind == CLASS ? IN_CLASS : IN_INTERFACE;
+                _skipToBody( false );
+                _ncss++;
+                _body( declaration ? bodyContext : IN_MEMBERS );
+                break;
+            case ENUM:
+                _skipToBody( false );
+                _enumBody();
+                break;
+            case AT:
+                // annotation type
+                _skipToBody( false );
+                _ncss++;
+                _body( IN_ANNOTATION );
+                break;
+            default:
+                _methodOrField( context, first, beforeType );
+        }
+    }
+
+    private void _methodOrField( int context, Token first, Token beforeType )
+        throws ParseException
+    {
+        Token typeStart = _token;
+        int angles = 0;
+        while ( _token.kind != LPAREN && _token.kind != ASSIGN && _token.kind != SEMICOLON
+                && !( _token.kind == COMMA && angles == 0 ) )
+        {
+            switch ( _token.kind )
+            {
+                case LT:
+                    angles++;
+                    break;
+                case GT:
+                    angles--;
+                    break;
+                case AT:
+                    _skipAnnotation();
+                    continue;
+                case LBRACE:
+                case RBRACE:
+                case RPAREN:
+                case EOF:
+                    throw _unexpected();
+                default:
+            }
+            _next();
+        }
+
+        if ( _token.kind != LPAREN )
+        {
+            // field
+            if ( context == IN_CLASS || context == IN_INTERFACE )
+            {
+                _javadoc( beforeType );
+                _ncss++;
+            }
+            _skipExpression( SEMICOLON );
+            _next();
+        }
+        else if ( context == IN_ANNOTATION )
+        {
+            // annotation type element, maybe with a default value
+            _ncss++;
+            _skipExpression( SEMICOLON );
+            _next();
+        }
+        else
+        {
+            // method or constructor
+            _javadoc( context != IN_MEMBERS && first != typeStart ? first : _resultToken( typeStart, _previous ) );
+            _ncss++;
+            _skipParens();
+            _skipToBody( true );
+            if ( _token.kind == LBRACE )
+            {
+                _block();
+            }
+            else
+            {
+                _next();
+            }
+        }
+    }
+
+    /**
+     * Without modifiers, or with modifiers already consumed by the
+     * caller, the parser looks for the javadoc of a method in front of
+     * the first class name of the result type, or in front of the last
+     * token of a primitive result type. For constructors it is the name.
+     */
+    private static Token _resultToken( Token typeStart, Token name )
+    {
+        Token token = typeStart;
+        if ( token.kind == LT )
+        {
+            // type parameters
+            int angles = 0;
+            do
+            {
+                if ( token.kind == LT )
+                {
+                    angles++;
+                }
+                else if ( token.kind == GT )
+                {
+                    angles--;
+                }
+                token = token.next;
+            }
+            while ( angles > 0 && token != name );
+        }
+
+        Token last = name;
+        for ( ; token != name; token = token.next )
+        {
+            if ( token.kind == IDENTIFIER )
+            {
+                return token;
+            }
+            last = token;
+        }
+
+        return last;
+    }
+
+    private void _block()
+        throws ParseException
+    {
+        _expect( LBRACE );
+        while ( _token.kind != RBRACE )
+        {
+            _statement();
+        }
+        _next();
+    }
+
+    private void _statement()
+        throws ParseException
+    {
+        switch ( _token.kind )
+        {
+            case LBRACE:
+                _block();
+                break;
+            case SEMICOLON:
+                // empty statement
+                _next();
+                break;
+            case IF:
+                _next();
+                _ncss++;
+                _skipParens();
+                _statement();
+                if ( _token.kind == ELSE )
+                {
+                    _next();
+                    _ncss++;
+                    _statement();
+                }
+                break;
+            case WHILE:
+            case FOR:
+                _next();
+                _ncss++;
+                _skipParens();
+                _statement();
+                break;
+            case DO:
+                _next();
+                _ncss++;
+                _statement();
+                _expect( WHILE );
+                _skipParens();
+                _expect( SEMICOLON );
+                break;
+            case SWITCH:
+                _next();
+                _ncss++;
+                _skipParens();
+                _switchBody();
+                break;
+            case TRY:
+                _next();
+                if ( _token.kind == LPAREN )
+                {
+                    _skipParens();
+                }
+                _block();
+                while ( _token.kind == CATCH )
+                {
+                    _next();
+                    _ncss++;
+                    _skipParens();
+                    _block();
+                }
+                if ( _token.kind == FINALLY )
+                {
+                    _next();
+                    _ncss++;
+                    _block();
+                }
+                break;
+            case RETURN:
+            case THROW:
+            case BREAK:
+            case CONTINUE:
+            case ASSERT:
+                _next();
+                _skipExpression( SEMICOLON );
+                _next();
+                _ncss++;
+                break;
+            case SYNCHRONIZED:
+                if ( _peek( 1 ).kind == LPAREN )
+                {
+                    _next();
+                    _ncss++;
+                    _skipParens();
+                    _block();
+                    break;
+                }
+                _localDeclaration();
+                break;
+            case IDENTIFIER:
+                if ( _peek( 1 ).kind == COLON )
+                {
+                    // labeled statement
+                    _next();
+                    _next();
+                    _ncss++;
+                    _statement();
+                    break;
+                }
+                _localDeclaration();
+                break;
+            default:
+                _localDeclaration();
+        }
+    }
+
+    /**
+     * A local class or interface, a local variable declaration or a
+     * statement expression.
+     */
+    private void _localDeclaration()
+        throws ParseException
+    {
+        int kind = _peek( _skipModifiersAhead( 0 ) ).kind;
+        if ( kind == CLASS || kind == INTERFACE )
+        {
+            _skipModifiers();
+            _skipToBody( false );
+            _ncss++;
+            _body( kind == CLASS ? IN_CLASS : IN_INTERFACE );
+            return;
+        }
+
+        _skipExpression( SEMICOLON );
+        _next();
+        _ncss++;
+    }
+
+    private void _switchBody()
+        throws ParseException
+    {
+        _expect( LBRACE );
+        while ( _token.kind != RBRACE )
+        {
+            if ( _token.kind == CASE )
+            {
+                _next();
+                _ncss++;
+                _skipExpression( COLON );
+                _next();
+            }
+            else if ( _token.kind == _DEFAULT && _peek( 1 ).kind == COLON )
+            {
+                _next();
+                _next();
+                _ncss++;
+            }
+            else
+            {
+                _statement();
+            }
+        }
+        _next();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss.parser;
+
+/**
+ * Gets told what the parser does while it counts, for debugging the
+ * grammar. The parser only passes constants and tokens it already
+ * has, so tracing costs nothing but the call when it is not used.
+ *
+ * @version $Id$
+ */
+public interface ParserTraceListener
+{
+    /**
+     * Listener ignoring everything, which parsers use by default.
+     */
+    ParserTraceListener NONE = new ParserTraceListener()
+    {
+        public void event( String event, Token token )
+        {
+        }
+
+        public void lookaheadStarted()
+        {
+        }
+
+        public void lookahead( String production, int first, int last, boolean matched, Token token, Token scanned )
+        {
+        }
+    };
+
+    /**
+     * @param event what the parser did, e.g. "_ncss++" when it counted
+     *        a statement.
+     * @param token the token the event is about, usually the last one
+     *        consumed. May be null.
+     */
+    void event( String event, Token token );
+
+    /**
+     * The parser is about to try the LOOKAHEAD specifications of a
+     * choice or a loop.
+     */
+    void lookaheadStarted();
+
+    /**
+     * The parser decided a choice or a loop after {@link #lookaheadStarted()}.
+     * The LOOKAHEAD specifications of a production are numbered from 1
+     * in the order of the grammar.
+     *
+     * @param production the production containing the LOOKAHEADs.
+     * @param first the first LOOKAHEAD tried.
+     * @param last the last LOOKAHEAD tried, all before it failed.
+     * @param matched whether the last LOOKAHEAD matched.
+     * @param token the last token consumed before the LOOKAHEADs.
+     * @param scanned the furthest token the last LOOKAHEAD looked at.
+     */
+    void lookahead( String production, int first, int last, boolean matched, Token token, Token scanned );
+}
@@ -0,0 +1,222 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Test of updating an XML report with changed source files.
+ *
+ * @version $Id$
+ */
+public class BaselineReportTest extends AbstractTestCase
+{
+    public void testReplace() throws IOException
+    {
+        File baselineFile = new File( getTestDir(), "../baseline-test.xml" );
+        Javancss baseline = new Javancss( Arrays.asList( getTestFile( 1 ), getTestFile( 2 ), getTestFile( 3 ) ) );
+        baseline.setXML( true );
+        PrintWriter pw = new PrintWriter( new OutputStreamWriter( new FileOutputStream( baselineFile ), "UTF-8" ) );
+        baseline.format( pw, false, false, false, true );
+        pw.close();
+
+        BaselineReport report = BaselineReport.read( baselineFile );
+        assertTrue( report.hasPackages() );
+        assertTrue( report.hasObjects() );
+        assertTrue( report.hasFunctions() );
+        assertEquals( baseline.getNcss(), report.getNcss() );
+        assertEquals( _toStrings( baseline.getFunctionMetrics() ), _toStrings( report.getFunctionMetrics() ) );
+
+        // Test2 changed into Test4, Test3 deleted and Test5 added
+        Map<String, FileMetric> fileMetrics = _measure( getTestFile( 2 ), getTestFile( 3 ), getTestFile( 4 ),
+                                                        getTestFile( 5 ) );
+        report.replace( Arrays.asList( fileMetrics.get( getTestFile( 2 ).getPath() ),
+                                       fileMetrics.get( getTestFile( 3 ).getPath() ), null ),
+                        Arrays.asList( fileMetrics.get( getTestFile( 4 ).getPath() ), null,
+                                       fileMetrics.get( getTestFile( 5 ).getPath() ) ) );
+        assertEquals( 0, report.getMissing() );
+
+        Javancss expected = new Javancss( Arrays.asList( getTestFile( 1 ), getTestFile( 4 ), getTestFile( 5 ) ) );
+        assertEquals( expected.getNcss(), report.getNcss() );
+        assertEquals( _toStrings( expected.getFunctionMetrics() ), _toStrings( report.getFunctionMetrics() ) );
+        assertEquals( _toStrings( expected.getObjectMetrics() ), _toStrings( report.getObjectMetrics() ) );
+        assertEquals( _toStrings( expected.getPackageMetrics() ), _toStrings( report.getPackageMetrics() ) );
+
+        // metrics of a file the report was not created with
+        report.replace( Collections.singletonList( fileMetrics.get( getTestFile( 2 ).getPath() ) ),
+                        Collections.<FileMetric>singletonList( null ) );
+        assertTrue( report.getMissing() > 0 );
+    }
+
+    public void testSameName() throws IOException
+    {
+        // classes of the default package in different directories
+        File first = new ArchiveEntry( "a/X.java", "class X { void f() { } }\n".getBytes( "ISO-8859-1" ) );
+        File second = new ArchiveEntry( "b/X.java", "class X { void f() { f(); } }\n".getBytes( "ISO-8859-1" ) );
+        File third = new ArchiveEntry( "c/X.java", "class X { void f() { f(); f(); } }\n".getBytes( "ISO-8859-1" ) );
+        Map<String, FileMetric> fileMetrics = _measure( first, second, third );
+        BaselineReport report = BaselineReport.read( _report( "same-name", first, second ) );
+
+        // only the metrics with the same values are taken out
+        report.replace( Arrays.asList( fileMetrics.get( second.getPath() ), fileMetrics.get( third.getPath() ) ),
+                        Arrays.<FileMetric>asList( null, null ) );
+        assertEquals( 2, report.getMissing() );
+        assertEquals( 1, report.getObjectMetrics().size() );
+        assertEquals( fileMetrics.get( first.getPath() ).objectMetrics.get( 0 ).ncss,
+                      report.getObjectMetrics().get( 0 ).ncss );
+        assertEquals( 1, report.getFunctionMetrics().size() );
+        assertEquals( fileMetrics.get( first.getPath() ).functionMetrics.get( 0 ).ncss,
+                      report.getFunctionMetrics().get( 0 ).ncss );
+    }
+
+    public void testMerge() throws IOException
+    {
+        File[] files = { getTestFile( 1 ), getTestFile( 2 ), getTestFile( 3 ), getTestFile( 4 ), getTestFile( 5 ) };
+        BaselineReport merged = BaselineReport.read( _report( "shard-1", files[0], files[1], files[2] ) );
+        merged.add( BaselineReport.read( _report( "shard-2", files[3], files[4] ) ) );
+
+        BaselineReport single = BaselineReport.read( _report( "single", files ) );
+
+        Javancss expected = new Javancss( Arrays.asList( files ) );
+        assertEquals( expected.getNcss(), merged.getNcss() );
+        assertEquals( _toStrings( expected.getPackageMetrics() ), _toStrings( merged.getPackageMetrics() ) );
+        assertEquals( _toStrings( single.getObjectMetrics() ), _toStrings( merged.getObjectMetrics() ) );
+        assertEquals( _toStrings( single.getFunctionMetrics() ), _toStrings( merged.getFunctionMetrics() ) );
+        assertEquals( expected.getFunctionMetrics().size(), merged.getFunctionMetrics().size() );
+    }
+
+    public void testMergeShards() throws IOException
+    {
+        List<String> args = Arrays.asList( "-all", "-xml", "-recursive", "-include", "Test{?,??}.java", "-exclude",
+                                           "Test42.java", getTestDir().getPath() );
+        byte[] single = _run( args );
+
+        List<String> mergeArgs = new ArrayList<String>( Arrays.asList( "-all", "-xml", "-merge" ) );
+        for ( int shard = 1; shard <= 2; shard++ )
+        {
+            List<String> shardArgs = new ArrayList<String>( args );
+            shardArgs.addAll( 0, Arrays.asList( "-shard", shard + "/2" ) );
+            File reportFile = new File( getTestDir(), "../shard-" + shard + "-of-2-test.xml" );
+            FileUtils.writeByteArrayToFile( reportFile, _run( shardArgs ) );
+            mergeArgs.add( reportFile.getPath() );
+        }
+        byte[] merged = _run( mergeArgs );
+
+        // the same but for the time the report was written
+        assertEquals( _withoutDate( single ), _withoutDate( merged ) );
+    }
+
+    private static byte[] _run( List<String> args ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        try
+        {
+            System.setOut( new PrintStream( out, true ) );
+            new Javancss( args.toArray( new String[args.size()] ) );
+        }
+        finally
+        {
+            System.setOut( stdout );
+        }
+
+        return out.toByteArray();
+    }
+
+    private static String _withoutDate( byte[] report ) throws IOException
+    {
+        String sReport = new String( report, "ISO-8859-1" );
+        assertTrue( sReport.contains( "<function>" ) );
+
+        return sReport.replaceFirst( "<date>[^<]*</date>\\s*<time>[^<]*</time>", "" );
+    }
+
+    private File _report( String name, File... files ) throws IOException
+    {
+        File reportFile = new File( getTestDir(), "../" + name + "-test.xml" );
+        Javancss javancss = new Javancss( Arrays.asList( files ) );
+        javancss.setXML( true );
+        PrintWriter pw = new PrintWriter( new OutputStreamWriter( new FileOutputStream( reportFile ), "UTF-8" ) );
+        javancss.format( pw, false, false, false, true );
+        pw.close();
+
+        return reportFile;
+    }
+
+    private Map<String, FileMetric> _measure( File... files )
+    {
+        final Map<String, FileMetric> fileMetrics = new HashMap<String, FileMetric>();
+        Javancss javancss = new Javancss();
+        javancss.addMetricsListener( new MetricsAdapter()
+        {
+            @Override
+            public void fileFinished( FileMetric fileMetric )
+            {
+                fileMetrics.put( fileMetric.name, fileMetric );
+            }
+        } );
+        javancss.measure( Arrays.asList( files ) );
+
+        return fileMetrics;
+    }
+
+    private static List<String> _toStrings( List<? extends Metric> metrics )
+    {
+        List<String> strings = new ArrayList<String>();
+        for ( Metric metric : metrics )
+        {
+            String s = metric.name + " " + metric.ncss + " " + metric.javadocs;
+            if ( metric instanceof FunctionMetric )
+            {
+                s += " " + ( (FunctionMetric) metric ).ccn;
+            }
+            else if ( metric instanceof ObjectMetric )
+            {
+                ObjectMetric objectMetric = (ObjectMetric) metric;
+                s += " " + objectMetric.functions + " " + objectMetric.classes + " " + objectMetric.javadocsLn + " "
+                    + objectMetric.singleLn + " " + objectMetric.multiLn;
+            }
+            else if ( metric instanceof PackageMetric )
+            {
+                PackageMetric packageMetric = (PackageMetric) metric;
+                s += " " + packageMetric.functions + " " + packageMetric.classes + " " + packageMetric.javadocsLn + " "
+                    + packageMetric.singleLn + " " + packageMetric.multiLn;
+            }
+            strings.add( s );
+        }
+
+        return strings;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Test of the daemon mode.
+ *
+ * @version $Id$
+ */
+public class DaemonTest extends AbstractTestCase
+{
+    private File _dir;
+
+    private Daemon _daemon;
+
+    private Thread _thread;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        _dir = new File( getTestDir(), "../daemon-test" ).getCanonicalFile();
+        FileUtils.deleteDirectory( _dir );
+        _daemon = new Daemon( new File( _dir, "daemon" ) );
+        _thread = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                _daemon.run();
+            }
+        } );
+        _thread.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        _daemon.stop();
+        _thread.join();
+    }
+
+    public void testInfoFile() throws IOException
+    {
+        assertEquals( _daemon.getPort() + " " + _daemon.getToken() + "\n",
+                      FileUtils.readFileToString( new File( _dir, "daemon" ), "UTF-8" ) );
+    }
+
+    public void testSameOutputAsJavancss() throws IOException
+    {
+        String[] args = { "-all", "Test1.java", "Test2.java" };
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        String sOldWorkingDirectory = System.getProperty( "user.dir" );
+        try
+        {
+            System.setOut( new PrintStream( expected, true ) );
+            System.setProperty( "user.dir", getTestDir().getPath() );
+            new Javancss( args );
+        }
+        finally
+        {
+            System.setOut( oldOut );
+            System.setProperty( "user.dir", sOldWorkingDirectory );
+        }
+
+        assertEquals( "0", _request( _daemon.getToken(), args ) );
+        assertEquals( expected.toString(), FileUtils.readFileToString( new File( _dir, "out" ) ) );
+        assertEquals( "", FileUtils.readFileToString( new File( _dir, "err" ) ) );
+        assertEquals( sOldWorkingDirectory, System.getProperty( "user.dir" ) );
+
+        assertEquals( "1", _request( _daemon.getToken(), new String[] { "NoSuchFile.java" } ) );
+        assertTrue( FileUtils.readFileToString( new File( _dir, "err" ) ).startsWith( "File not found: " ) );
+    }
+
+    public void testListFile() throws IOException
+    {
+        File listFile = new File( getTestDir(), "daemon-test-files.txt" );
+        FileUtils.writeStringToFile( listFile, "Test1.java\nTest2.java\n", "UTF-8" );
+
+        // the names are relative to the client's directory
+        assertEquals( "0", _request( _daemon.getToken(), new String[] { "-all", "@daemon-test-files.txt" } ) );
+        String out = FileUtils.readFileToString( new File( _dir, "out" ) );
+        assertEquals( "", FileUtils.readFileToString( new File( _dir, "err" ) ) );
+        assertEquals( "0", _request( _daemon.getToken(), new String[] { "-all", "Test1.java", "Test2.java" } ) );
+        assertEquals( FileUtils.readFileToString( new File( _dir, "out" ) ), out );
+        listFile.delete();
+    }
+
+    public void testWrongToken() throws IOException
+    {
+        assertNull( _request( "wrong", new String[] { "Test1.java" } ) );
+        assertFalse( new File( _dir, "out" ).exists() );
+    }
+
+    private String _request( String token, String[] args ) throws IOException
+    {
+        Socket socket = new Socket( InetAddress.getByName( null ), _daemon.getPort() );
+        try
+        {
+            Writer out = new OutputStreamWriter( socket.getOutputStream(), "UTF-8" );
+            out.write( token + "\n" + getTestDir().getPath() + "\n" + new File( _dir, "out" ).getPath() + "\n"
+                       + new File( _dir, "err" ).getPath() + "\n" );
+            for ( String arg : args )
+            {
+                out.write( arg + "\n" );
+            }
+            out.write( "\n" );
+            out.flush();
+
+            return new BufferedReader( new InputStreamReader( socket.getInputStream(), "UTF-8" ) ).readLine();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+}
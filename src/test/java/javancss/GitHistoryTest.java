@@ -0,0 +1,111 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Test of measuring the history of a git repository.
+ *
+ * @version $Id$
+ */
+public class GitHistoryTest extends AbstractTestCase
+{
+    private File _dir;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        _dir = new File( getTestDir(), "../git-history-test" ).getCanonicalFile();
+        FileUtils.deleteDirectory( _dir );
+        _dir.mkdirs();
+    }
+
+    public void testHistory() throws Exception
+    {
+        if ( !_git( "init", "-q" ) )
+        {
+            // no git available
+            return;
+        }
+        FileUtils.writeStringToFile( new File( _dir, "src/a/A.java" ), "package a;\nclass A { void f() { if ( true ) { } } }\n" );
+        FileUtils.writeStringToFile( new File( _dir, "README" ), "not measured\n" );
+        _commit();
+        FileUtils.writeStringToFile( new File( _dir, "src/b/B.java" ), "package b;\nclass B { }\n" );
+        _commit();
+        FileUtils.writeStringToFile( new File( _dir, "src/b/B.java" ), "package b;\nclass B { int i; void g() { } }\n" );
+        FileUtils.copyFile( new File( _dir, "src/a/A.java" ), new File( _dir, "src/a/Copy.java" ) );
+        _commit();
+
+        GitHistory history = new GitHistory( _dir, null, 2 );
+        StringWriter w = new StringWriter();
+        history.print( w, "HEAD", 10, Collections.<String>emptyList(), true, true );
+        String xml = w.toString();
+
+        assertEquals( 3, xml.split( "<commit>" ).length - 1 );
+        // A.java is only measured once, the copy has the same content
+        assertEquals( 3, history.getMeasuredBlobs() );
+
+        String[] commits = xml.split( "<commit>" );
+        assertTrue( commits[1].contains( "<files>1</files>" ) );
+        assertTrue( commits[1].contains( "<ncss>4</ncss>" ) );
+        assertTrue( commits[1].contains( "<ccn>2</ccn>" ) );
+        assertTrue( commits[2].contains( "<files>2</files>" ) );
+        assertTrue( commits[3].contains( "<files>3</files>" ) );
+        assertTrue( commits[3].contains( "<ccn>5</ccn>" ) );
+
+        // the same as measuring the checked out files
+        Javancss javancss = new Javancss( Arrays.asList( new File( _dir, "src/a/A.java" ), new File( _dir, "src/a/Copy.java" ),
+                                                         new File( _dir, "src/b/B.java" ) ) );
+        assertTrue( commits[3].contains( "<ncss>" + javancss.getNcss() + "</ncss>" ) );
+        assertTrue( commits[3].contains( "<name>b</name>" ) );
+    }
+
+    private void _commit() throws Exception
+    {
+        assertTrue( _git( "add", "-A" ) );
+        assertTrue( _git( "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "test" ) );
+    }
+
+    private boolean _git( String... args ) throws InterruptedException
+    {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy( args, 0, command, 1, args.length );
+        try
+        {
+            Process process = new ProcessBuilder( command ).directory( _dir ).redirectErrorStream( true ).start();
+            process.getInputStream().close();
+
+            return process.waitFor() == 0;
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javancss.parser.JavaParser;
+import javancss.parser.ParserTraceListener;
+import javancss.parser.Token;
+import junit.framework.TestCase;
+
+/**
+ * Test of the profile of the LOOKAHEADs of the grammar.
+ *
+ * @version $Id$
+ */
+public class GrammarProfileTest extends TestCase
+{
+    public void testRecorder()
+    {
+        GrammarProfile profile = new GrammarProfile();
+        GrammarProfile.Recorder recorder = profile.newRecorder( null );
+        // sites 1 and 2 failed, 3 matched
+        recorder.lookahead( "Choice", 1, 3, true, 4, 20 );
+        // the loop went on once, then stopped
+        recorder.lookahead( "Loop", 1, 1, true, 2, 5 );
+        recorder.lookahead( "Loop", 1, 1, false, 1, 3 );
+        profile.add( recorder );
+        assertEquals( 1, profile.getFiles() );
+
+        GrammarProfile.Counters first = profile.getSites().get( "Choice:1" );
+        assertEquals( 1, first.getEvaluations() );
+        assertEquals( 1, first.getFailures() );
+        assertEquals( 0, first.getDecisions() );
+        assertEquals( 0, first.getTokens() );
+        GrammarProfile.Counters third = profile.getSites().get( "Choice:3" );
+        assertEquals( 1, third.getEvaluations() );
+        assertEquals( 0, third.getFailures() );
+        assertEquals( 1, third.getDecisions() );
+        assertEquals( 4, third.getTokens() );
+        assertEquals( 20, third.getTime() );
+        GrammarProfile.Counters loop = profile.getSites().get( "Loop:1" );
+        assertEquals( 2, loop.getEvaluations() );
+        assertEquals( 1, loop.getFailures() );
+        assertEquals( 2, loop.getDecisions() );
+        assertEquals( 3, loop.getTokens() );
+        assertEquals( 8, loop.getTime() );
+        assertEquals( 4, profile.getSites().size() );
+
+        GrammarProfile.Counters choice = profile.getProductions().get( "Choice" );
+        assertEquals( 3, choice.getEvaluations() );
+        assertEquals( 2, choice.getFailures() );
+        assertEquals( 1, choice.getDecisions() );
+        assertEquals( 20, choice.getTime() );
+        assertEquals( 2, profile.getProductions().size() );
+
+        StringWriter report = new StringWriter();
+        profile.print( new PrintWriter( report ) );
+        assertTrue( report.toString().contains( "Choice:3" ) );
+    }
+
+    public void testParse() throws Exception
+    {
+        final List<String> events = new ArrayList<String>();
+        GrammarProfile profile = new GrammarProfile();
+        GrammarProfile.Recorder recorder = profile.newRecorder( new ParserTraceListener()
+        {
+            public void event( String event, Token token )
+            {
+                events.add( event );
+            }
+
+            public void lookaheadStarted()
+            {
+            }
+
+            public void lookahead( String production, int first, int last, boolean matched, Token token, Token scanned )
+            {
+                events.add( production + ":" + last );
+            }
+        } );
+        JavaParser parser = new JavaParser( new StringReader( "class A {\n  int i;\n}\n" ) );
+        parser.setTraceListener( recorder );
+        parser.parse();
+        profile.add( recorder );
+
+        // the field is tried as everything else first
+        for ( int site = 1; site < 8; site++ )
+        {
+            GrammarProfile.Counters counters = profile.getSites().get( "ClassBodyDeclaration:" + site );
+            assertEquals( 1, counters.getEvaluations() );
+            assertEquals( 1, counters.getFailures() );
+            assertEquals( 0, counters.getDecisions() );
+        }
+        GrammarProfile.Counters field = profile.getSites().get( "ClassBodyDeclaration:8" );
+        assertEquals( 1, field.getFailures() );
+        assertEquals( 1, field.getDecisions() );
+        assertTrue( field.getTokens() > 0 );
+
+        // the events still reach the next listener
+        assertTrue( events.contains( "_ncss++" ) );
+        assertTrue( events.contains( "ClassBodyDeclaration:8" ) );
+    }
+}
@@ -22,6 +22,7 @@ Boston, MA 02111-1307, USA.  */
 package javancss;
 
 import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
 import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectHelper;
@@ -67,4 +68,18 @@ public class JavancssAntTaskTest extends TestCase
     {
         project.executeTarget( "run" );
     }
+
+    public void testReportFile() throws Exception
+    {
+        File report = new File( "target/test-classes/ant-report.xml" );
+        report.delete();
+
+        project.executeTarget( "report" );
+
+        String xml = FileUtils.readFileToString( report, "UTF-8" );
+        assertTrue( xml.contains( "<packages>" ) );
+        assertTrue( xml.contains( "<functions>" ) );
+        assertFalse( xml.contains( "<objects>" ) );
+        assertTrue( xml.endsWith( "</javancss>\n" ) );
+    }
 }
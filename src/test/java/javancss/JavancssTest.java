@@ -22,11 +22,21 @@ package javancss;
 
 import org.apache.commons.io.FileUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Test class for the JavaNCSS application.
@@ -108,4 +118,569 @@ public class JavancssTest extends AbstractTestCase
         String[] args = new String[] { "-recursive", getTestFile( "../../../lib" ).getAbsolutePath() };
         measureWithArgs( args );
     }
+
+    public void testThreads() throws IOException
+    {
+        List<File> files = getTestFiles();
+
+        Javancss sequential = new Javancss( files );
+
+        Javancss parallel = new Javancss();
+        parallel.setThreads( 4 );
+        parallel.measure( files );
+
+        assertEquals( sequential.getNcss(), parallel.getNcss() );
+        assertEquals( sequential.getLOC(), parallel.getLOC() );
+        assertEquals( sequential.getLastErrorMessage(), parallel.getLastErrorMessage() );
+        assertEquals( printAll( sequential ), printAll( parallel ) );
+    }
+
+    public void testMeasureTwice() throws IOException
+    {
+        List<File> files = getTestFiles();
+
+        Javancss expected = new Javancss( files );
+
+        Javancss javancss = new Javancss();
+        javancss.measure( Collections.singletonList( getTestFile( "DoesNotExist.java" ) ) );
+        assertNotNull( javancss.getLastError() );
+        javancss.measure( files );
+        String first = printAll( javancss );
+        javancss.measure( files );
+
+        assertEquals( expected.getNcss(), javancss.getNcss() );
+        assertEquals( expected.getLOC(), javancss.getLOC() );
+        assertEquals( expected.getFunctionMetrics().size(), javancss.getFunctionMetrics().size() );
+        assertEquals( expected.getObjectMetrics().size(), javancss.getObjectMetrics().size() );
+        assertEquals( expected.getLastErrorMessage(), javancss.getLastErrorMessage() );
+        assertEquals( printAll( expected ), first );
+        assertEquals( first, printAll( javancss ) );
+    }
+
+    public void testReuseParsers() throws IOException
+    {
+        List<File> files = getTestFiles();
+
+        Javancss expected = new Javancss( files );
+
+        Javancss javancss = new Javancss();
+        javancss.setReuseParsers( true );
+        javancss.setThreads( 2 );
+        javancss.measure( files );
+
+        assertEquals( expected.getNcss(), javancss.getNcss() );
+        assertEquals( expected.getLOC(), javancss.getLOC() );
+        assertEquals( expected.getJvdc(), javancss.getJvdc() );
+        assertEquals( expected.getLastErrorMessage(), javancss.getLastErrorMessage() );
+        assertEquals( printAll( expected ), printAll( javancss ) );
+    }
+
+    public void testStreaming() throws IOException
+    {
+        List<File> files = getTestFiles();
+
+        Javancss javancss = new Javancss( files );
+        javancss.setXML( true );
+
+        Javancss streaming = new Javancss();
+        streaming.setXML( true );
+        streaming.setStreaming( true );
+        streaming.setThreads( 2 );
+        streaming.measure( files );
+
+        assertTrue( streaming.getFunctionMetrics().isEmpty() );
+        assertTrue( streaming.getObjectMetrics().isEmpty() );
+        assertEquals( javancss.getNcss(), streaming.getNcss() );
+        assertEquals( printAll( javancss ), printAll( streaming ) );
+
+        // printEnd() releases the streamed metrics
+        streaming.printEnd( new StringWriter() );
+        try
+        {
+            streaming.printFunctionNcss( new StringWriter() );
+            fail( "functions printed after printEnd()" );
+        }
+        catch ( IOException expected )
+        {
+        }
+    }
+
+    public void testMetricsListener() throws IOException
+    {
+        List<File> files = getTestFiles();
+
+        Javancss expected = new Javancss( files );
+
+        final List<File> started = new ArrayList<File>();
+        final List<String> finished = new ArrayList<String>();
+        final List<File> failed = new ArrayList<File>();
+        final List<String> functions = new ArrayList<String>();
+        final List<String> objects = new ArrayList<String>();
+        final Map<String, Integer> packageNcss = new HashMap<String, Integer>();
+        Javancss javancss = new Javancss();
+        javancss.setThreads( 2 );
+        javancss.setKeepMetrics( false );
+        javancss.addMetricsListener( new MetricsAdapter()
+        {
+            @Override
+            public void fileStarted( File file )
+            {
+                started.add( file );
+            }
+
+            @Override
+            public void objectMeasured( ObjectMetric objectMetric )
+            {
+                objects.add( objectMetric.name );
+            }
+
+            @Override
+            public void functionMeasured( FunctionMetric functionMetric )
+            {
+                functions.add( functionMetric.name );
+            }
+
+            @Override
+            public void packageMeasured( PackageMetric packageMetric )
+            {
+                Integer ncss = packageNcss.get( packageMetric.name );
+                packageNcss.put( packageMetric.name, packageMetric.ncss + ( ncss == null ? 0 : ncss ) );
+            }
+
+            @Override
+            public void fileFinished( FileMetric fileMetric )
+            {
+                finished.add( fileMetric.name );
+            }
+
+            @Override
+            public void fileFailed( File file, String message, Throwable error )
+            {
+                assertNotNull( message );
+                failed.add( file );
+            }
+        } );
+        javancss.measure( files );
+
+        assertTrue( javancss.getFunctionMetrics().isEmpty() );
+        assertTrue( javancss.getObjectMetrics().isEmpty() );
+        assertEquals( expected.getNcss(), javancss.getNcss() );
+        assertEquals( files, started );
+        assertEquals( files.size(), finished.size() + failed.size() );
+        assertFalse( failed.isEmpty() );
+
+        List<String> expectedFunctions = new ArrayList<String>();
+        for ( FunctionMetric functionMetric : expected.getFunctionMetrics() )
+        {
+            expectedFunctions.add( functionMetric.name );
+        }
+        assertEquals( expectedFunctions, functions );
+        List<String> expectedObjects = new ArrayList<String>();
+        for ( ObjectMetric objectMetric : expected.getObjectMetrics() )
+        {
+            expectedObjects.add( objectMetric.name );
+        }
+        assertEquals( expectedObjects, objects );
+        assertEquals( expected.getPackageMetrics().size(), packageNcss.size() );
+        for ( PackageMetric packageMetric : expected.getPackageMetrics() )
+        {
+            assertEquals( packageMetric.name, packageMetric.ncss, packageNcss.get( packageMetric.name ).intValue() );
+        }
+
+        StringWriter expectedPackages = new StringWriter();
+        expected.printPackageNcss( expectedPackages );
+        StringWriter packages = new StringWriter();
+        javancss.printPackageNcss( packages );
+        assertEquals( expectedPackages.toString(), packages.toString() );
+    }
+
+    /**
+     * Comment counters are kept per parser, so measurements running
+     * at the same time in one JVM must not disturb each other.
+     */
+    public void testConcurrentMeasurements() throws Exception
+    {
+        final int[] testFileIds = { 32, 56, 68, 6 };
+        final String[] expected = new String[testFileIds.length];
+        for ( int i = 0; i < testFileIds.length; i++ )
+        {
+            expected[i] = printAll( measureTestFile( testFileIds[i] ) );
+        }
+
+        final List<String> failures = new ArrayList<String>();
+        Thread[] threads = new Thread[testFileIds.length];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int run = 0; run < 20; run++ )
+                        {
+                            Javancss javancss = measureTestFile( testFileIds[index] );
+                            if ( !expected[index].equals( printAll( javancss ) ) )
+                            {
+                                synchronized ( failures )
+                                {
+                                    failures.add( "Test" + testFileIds[index] + ".java" );
+                                }
+                            }
+                        }
+                    }
+                    catch ( IOException e )
+                    {
+                        synchronized ( failures )
+                        {
+                            failures.add( e.toString() );
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertTrue( failures.toString(), failures.isEmpty() );
+    }
+
+    public void testDuplicates() throws IOException
+    {
+        File dir = new File( getTestDir(), "../duplicates-test" );
+        FileUtils.deleteDirectory( dir );
+        List<File> files = new ArrayList<File>();
+        for ( String name : Arrays.asList( "a/Test56.java", "b/Test56.java", "Test57.java", "c/Test56.java" ) )
+        {
+            File file = new File( dir, name );
+            FileUtils.copyFile( getTestFile( Integer.parseInt( name.substring( name.length() - 7, name.length() - 5 ) ) ), file );
+            files.add( file );
+        }
+
+        final List<String> names = new ArrayList<String>();
+        Javancss javancss = new Javancss();
+        javancss.setDeduplicate( true );
+        javancss.addMetricsListener( new MetricsAdapter()
+        {
+            @Override
+            public void fileFinished( FileMetric fileMetric )
+            {
+                names.add( fileMetric.name );
+            }
+        } );
+        javancss.measure( files );
+
+        assertEquals( 2, javancss.getDuplicateFiles() );
+        assertEquals( 2 * getTestFile( 56 ).length(), javancss.getDuplicateBytes() );
+        for ( File file : files )
+        {
+            assertTrue( names.contains( file.getPath() ) );
+        }
+
+        Javancss single = new Javancss( Arrays.asList( getTestFile( 56 ) ) );
+        Javancss other = new Javancss( Arrays.asList( getTestFile( 57 ) ) );
+        assertEquals( 3 * single.getNcss() + other.getNcss(), javancss.getNcss() );
+        assertEquals( 3 * single.getLOC() + other.getLOC(), javancss.getLOC() );
+        assertEquals( 3 * single.getFunctionMetrics().size() + other.getFunctionMetrics().size(),
+                      javancss.getFunctionMetrics().size() );
+        assertEquals( 3 * single.getObjectMetrics().size() + other.getObjectMetrics().size(),
+                      javancss.getObjectMetrics().size() );
+        assertEquals( 0, new Javancss( files ).getDuplicateFiles() );
+    }
+
+    public void testDuplicatesNotKept() throws IOException
+    {
+        File dir = new File( getTestDir(), "../duplicates-not-kept-test" );
+        FileUtils.deleteDirectory( dir );
+        List<File> files = new ArrayList<File>();
+        for ( String name : Arrays.asList( "a/Test56.java", "b/Test56.java" ) )
+        {
+            File file = new File( dir, name );
+            FileUtils.copyFile( getTestFile( 56 ), file );
+            files.add( file );
+        }
+        for ( String name : Arrays.asList( "a/package-info.java", "b/package-info.java" ) )
+        {
+            File file = new File( dir, name );
+            FileUtils.writeStringToFile( file, "/** Docs. */\npackage p;\n", "ISO-8859-1" );
+            files.add( file );
+        }
+
+        final int[] functions = { 0 };
+        Javancss javancss = new Javancss();
+        javancss.setDeduplicate( true );
+        javancss.setKeepMetrics( false );
+        javancss.addMetricsListener( new MetricsAdapter()
+        {
+            @Override
+            public void functionMeasured( FunctionMetric functionMetric )
+            {
+                functions[0]++;
+            }
+        } );
+        javancss.measure( files );
+
+        // the functions are not remembered, so only the copy without any is not parsed again
+        assertEquals( 1, javancss.getDuplicateFiles() );
+        assertEquals( 2 * new Javancss( getTestFile( 56 ) ).getFunctionMetrics().size(), functions[0] );
+
+        Javancss parsed = new Javancss();
+        parsed.setDeduplicate( false );
+        parsed.measure( files );
+        assertEquals( 0, parsed.getDuplicateFiles() );
+        assertEquals( parsed.getNcss(), javancss.getNcss() );
+    }
+
+    public void testParseBudget() throws IOException
+    {
+        List<File> files = Arrays.asList( getTestFile( 56 ) );
+        Javancss fast = new Javancss();
+        fast.setFast( true );
+        fast.measure( files );
+
+        Javancss javancss = new Javancss();
+        javancss.setMaxTokens( 20 );
+        javancss.measure( files );
+        assertEquals( fast.getNcss(), javancss.getNcss() );
+        assertTrue( javancss.getFunctionMetrics().isEmpty() );
+        assertTrue( javancss.getLastErrorMessage(), javancss.getLastErrorMessage().startsWith( "Parse budget exceeded" ) );
+        assertNull( javancss.getLastError() );
+
+        // deeply nested expressions make the parser backtrack a lot
+        File dir = new File( getTestDir(), "../budget-test" );
+        File nested = new File( dir, "Nested.java" );
+        StringBuilder expression = new StringBuilder( "a" );
+        for ( int i = 0; i < 23; i++ )
+        {
+            expression.insert( 0, '(' ).append( ')' );
+        }
+        FileUtils.writeStringToFile( nested, "class Nested { int f() { return " + expression + "; } }\n" );
+        javancss = new Javancss();
+        javancss.setParseTimeout( 1 );
+        long start = System.currentTimeMillis();
+        javancss.measure( Arrays.asList( nested, getTestFile( 56 ) ) );
+        assertTrue( System.currentTimeMillis() - start < 5000 );
+        assertEquals( new Javancss( getTestFile( 56 ) ).getFunctionMetrics().size(), javancss.getFunctionMetrics().size() );
+        assertEquals( fast.getNcss() + 3, javancss.getNcss() );
+        assertTrue( javancss.getLastErrorMessage(), javancss.getLastErrorMessage().contains( "took longer than 1 s" ) );
+    }
+
+    public void testStatistics() throws IOException
+    {
+        List<File> files = getTestFiles();
+        Javancss javancss = new Javancss();
+        javancss.measure( files );
+        assertNull( javancss.getRunStatistics() );
+
+        javancss.setStatistics( true );
+        javancss.setThreads( 2 );
+        javancss.measure( files );
+        RunStatistics statistics = javancss.getRunStatistics();
+        long bytes = 0;
+        for ( File file : files )
+        {
+            bytes += file.length();
+        }
+        assertEquals( files.size(), statistics.getFiles() );
+        assertEquals( bytes, statistics.getBytes() );
+        assertEquals( 2, statistics.getThreads() );
+        assertTrue( statistics.getTokens() > statistics.getFiles() );
+        assertTrue( statistics.getParsingTime() > 0 );
+        assertTrue( statistics.getLexingTime() > 0 );
+        assertTrue( statistics.getTime() > 0 );
+        assertTrue( statistics.getPeakHeap() > 0 );
+
+        List<RunStatistics.FileTime> slowestFiles = statistics.getSlowestFiles();
+        assertEquals( RunStatistics.SLOWEST_FILES, slowestFiles.size() );
+        for ( int i = 1; i < slowestFiles.size(); i++ )
+        {
+            assertTrue( slowestFiles.get( i - 1 ).getTime() >= slowestFiles.get( i ).getTime() );
+        }
+
+        StringWriter xml = new StringWriter();
+        javancss.setXML( true );
+        javancss.format( new PrintWriter( xml ), false, false, false, false );
+        assertTrue( xml.toString().contains( "<files>" + files.size() + "</files>" ) );
+        assertTrue( xml.toString().endsWith( "</statistics>\n</javancss>\n" ) );
+    }
+
+    public void testCache() throws IOException
+    {
+        File dir = new File( getTestDir(), "../cache-test" );
+        FileUtils.deleteDirectory( dir );
+        File cacheDir = new File( dir, "cache" );
+        File sourceFile = new File( dir, "Test56.java" );
+        FileUtils.copyFile( getTestFile( 56 ), sourceFile );
+        List<File> files = new ArrayList<File>();
+        files.add( sourceFile );
+
+        Javancss uncached = new Javancss( files );
+
+        Javancss javancss = new Javancss();
+        javancss.setCacheDirectory( cacheDir );
+        javancss.measure( files );
+        assertEquals( printAll( uncached ), printAll( javancss ) );
+
+        File[] entries = cacheDir.listFiles();
+        assertEquals( 1, entries.length );
+        long lastModified = entries[0].lastModified();
+
+        // unchanged file: read from the cache
+        javancss = new Javancss();
+        javancss.setCacheDirectory( cacheDir );
+        javancss.measure( files );
+        assertEquals( printAll( uncached ), printAll( javancss ) );
+        assertEquals( lastModified, entries[0].lastModified() );
+
+        // changed file: measured again
+        FileUtils.writeStringToFile( sourceFile, "class Added { int i; }\n", "ISO-8859-1", true );
+        javancss = new Javancss();
+        javancss.setCacheDirectory( cacheDir );
+        javancss.measure( files );
+        assertEquals( uncached.getNcss() + 2, javancss.getNcss() );
+        assertEquals( 1, cacheDir.listFiles().length );
+    }
+
+    public void testCompactFunctions() throws IOException
+    {
+        List<File> files = getTestFiles();
+
+        Javancss expected = new Javancss( files );
+
+        Javancss javancss = new Javancss();
+        javancss.setCompactFunctions( true );
+        javancss.measure( files );
+
+        assertEquals( printAll( expected ), printAll( javancss ) );
+        List<FunctionMetric> functions = javancss.getFunctionMetrics();
+        assertEquals( expected.getFunctionMetrics().size(), functions.size() );
+        FunctionMetric function = functions.get( 7 );
+        assertEquals( expected.getFunctionMetrics().get( 7 ).name, function.name );
+        assertEquals( expected.getFunctionMetrics().get( 7 ).ccn, function.ccn );
+        assertNotSame( function, functions.get( 7 ) );
+
+        List<FunctionMetric> copy = new ArrayList<FunctionMetric>( functions );
+        assertEquals( functions.get( 8 ).name, copy.get( 8 ).name );
+        assertNotSame( copy.get( 7 ), copy.get( 8 ) );
+        Iterator<FunctionMetric> iterator = functions.iterator();
+        FunctionMetric first = iterator.next();
+        FunctionMetric second = iterator.next();
+        assertNotSame( first, second );
+        assertEquals( expected.getFunctionMetrics().get( 0 ).name, first.name );
+        assertEquals( expected.getFunctionMetrics().get( 1 ).name, second.name );
+
+        // the columns read without a FunctionMetric
+        FunctionMetricTable table = (FunctionMetricTable) functions;
+        for ( int i = 0; i < table.size(); i++ )
+        {
+            FunctionMetric metric = expected.getFunctionMetrics().get( i );
+            assertEquals( metric.name, table.getName( i ) );
+            assertEquals( metric.ncss, table.getNcss( i ) );
+            assertEquals( metric.ccn, table.getCcn( i ) );
+            assertEquals( metric.javadocs, table.getJavadocs( i ) );
+            assertEquals( metric.firstLine, table.getFirstLine( i ) );
+        }
+
+        javancss.setCompactFunctions( false );
+        assertEquals( printAll( expected ), printAll( javancss ) );
+    }
+
+    public void testImports()
+    {
+        Javancss javancss = new Javancss();
+        javancss.setSourceFile( getTestFile( 11 ) );
+        assertFalse( javancss.parseImports() );
+
+        PackageInfo packageInfo = javancss.getPackage();
+        assertEquals( "ccl.util", packageInfo.name );
+        assertEquals( 1, packageInfo.beginLine );
+        assertEquals( 1, packageInfo.beginColumn );
+        assertEquals( 1, packageInfo.endLine );
+        assertEquals( 17, packageInfo.endColumn );
+
+        List<ImportInfo> imports = javancss.getImports();
+        assertEquals( "java.awt.*", imports.get( 0 ).name );
+        assertEquals( 2, imports.get( 0 ).beginLine );
+        assertEquals( "java.applet.Applet", imports.get( 2 ).name );
+        assertEquals( 26, imports.get( 2 ).endColumn );
+
+        // names are kept only once
+        Javancss again = new Javancss();
+        again.setSourceFile( getTestFile( 11 ) );
+        assertFalse( again.parseImports() );
+        assertSame( packageInfo.name, again.getPackage().name );
+        assertSame( imports.get( 2 ).name, again.getImports().get( 2 ).name );
+    }
+
+    public void testReadBytes() throws IOException
+    {
+        byte[] content = "class A { int b = 1; }\n".getBytes( "UTF-8" );
+        content[5] = (byte) 0xff;
+
+        byte[] read = Javancss.readBytes( new ByteArrayInputStream( content ), content.length );
+        assertTrue( Arrays.equals( content, read ) );
+
+        // the file grew by one and by many bytes since its size was taken
+        read = Javancss.readBytes( new ByteArrayInputStream( content ), content.length - 1 );
+        assertTrue( Arrays.equals( content, read ) );
+        read = Javancss.readBytes( new ByteArrayInputStream( content ), 3 );
+        assertTrue( Arrays.equals( content, read ) );
+
+        // the file shrank
+        read = Javancss.readBytes( new ByteArrayInputStream( content ), content.length + 10 );
+        assertTrue( Arrays.equals( content, read ) );
+        read = Javancss.readBytes( new ByteArrayInputStream( new byte[0] ), 10 );
+        assertEquals( 0, read.length );
+    }
+
+    public void testGrammarProfile() throws IOException
+    {
+        File reportFile = new File( "target/grammar-profile-test.txt" );
+        reportFile.delete();
+        List<File> files = getTestFiles();
+        PrintStream out = System.out;
+        Javancss javancss = new Javancss();
+        javancss.setGrammarProfileFile( reportFile );
+        javancss.measure( files );
+        assertSame( out, System.out );
+
+        GrammarProfile profile = javancss.getGrammarProfile();
+        assertEquals( files.size(), profile.getFiles() );
+        assertTrue( profile.getSites().get( "ClassBodyDeclaration:8" ).getEvaluations() > 0 );
+        assertTrue( profile.getProductions().containsKey( "Expression" ) );
+        String report = FileUtils.readFileToString( reportFile, "UTF-8" );
+        assertTrue( report.contains( "Lookahead sites:" ) );
+        assertTrue( report.contains( "ClassBodyDeclaration:8" ) );
+    }
+
+    private List<File> getTestFiles()
+    {
+        File[] testFiles = getTestDir().listFiles();
+        Arrays.sort( testFiles );
+        List<File> files = new ArrayList<File>();
+        for ( File file : testFiles )
+        {
+            if ( file.getName().endsWith( ".java" ) )
+            {
+                files.add( file );
+            }
+        }
+
+        return files;
+    }
+
+    private String printAll( Javancss javancss ) throws IOException
+    {
+        StringWriter sw = new StringWriter();
+        javancss.printPackageNcss( sw );
+        javancss.printObjectNcss( sw );
+        javancss.printFunctionNcss( sw );
+
+        return sw.toString();
+    }
 }
@@ -0,0 +1,119 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javancss.parser.JavaParser;
+import javancss.parser.NcssScanner;
+import javancss.parser.ParseException;
+
+/**
+ * Checks that the token scanner of the fast mode counts the
+ * same as the parser.
+ *
+ * @version $Id$
+ */
+public class NcssScannerTest extends AbstractTestCase
+{
+    public void testSameAsParser() throws Exception
+    {
+        File[] testFiles = getTestDir().listFiles();
+        Arrays.sort( testFiles );
+        int files = 0;
+        for ( File file : testFiles )
+        {
+            if ( !file.getName().endsWith( ".java" ) )
+            {
+                continue;
+            }
+
+            JavaParser parser = new JavaParser( newReader( file ) );
+            try
+            {
+                parser.parse();
+            }
+            catch ( Throwable t )
+            {
+                // the scanner doesn't check the syntax as closely
+                continue;
+            }
+
+            NcssScanner scanner = new NcssScanner( newReader( file ) );
+            scanner.scan();
+
+            String name = file.getName();
+            assertEquals( "NCSS of " + name, parser.getNcss(), scanner.getNcss() );
+            assertEquals( "LOC of " + name, parser.getLOC(), scanner.getLOC() );
+            assertEquals( "javadocs of " + name, parser.getJvdc(), scanner.getJvdc() );
+            assertEquals( "single line comments of " + name, parser.getSl(), scanner.getSl() );
+            // the parser takes the lines of the last comment it has read
+            // so far as javadoc lines, only the sum is the same
+            assertEquals( "multi line comments of " + name, parser.getJdcl() + parser.getMl(),
+                          scanner.getJdcl() + scanner.getMl() );
+            files++;
+        }
+
+        assertTrue( "only " + files + " files compared", files > 100 );
+    }
+
+    public void testFast() throws IOException
+    {
+        Javancss javancss = new Javancss();
+        javancss.setFast( true );
+        javancss.measure( Arrays.asList( getTestFile( 56 ), getTestFile( 93 ) ) );
+
+        Javancss expected = new Javancss( Arrays.asList( getTestFile( 56 ), getTestFile( 93 ) ) );
+        assertEquals( expected.getNcss(), javancss.getNcss() );
+        assertEquals( expected.getLOC(), javancss.getLOC() );
+        assertTrue( javancss.getFunctionMetrics().isEmpty() );
+        assertTrue( javancss.getObjectMetrics().isEmpty() );
+    }
+
+    public void testUnbalanced() throws Exception
+    {
+        // brackets skipped on the way to a body or inside a declaration
+        for ( String source : Arrays.asList( "class A extends B] { }\n", "class A { int[ a; void m() {} }\n",
+                                             "class A { void m() { foo()); } }\n", "class A { void m() { }\n" ) )
+        {
+            try
+            {
+                new NcssScanner( new StringReader( source ) ).scan();
+                fail( "not rejected: " + source );
+            }
+            catch ( ParseException e )
+            {
+                // expected
+            }
+        }
+    }
+
+    private Reader newReader( File file ) throws IOException
+    {
+        return new InputStreamReader( new FileInputStream( file ), "ISO-8859-1" );
+    }
+}
@@ -0,0 +1,134 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+
+package javancss;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import javancss.parser.JavaParser;
+import javancss.parser.ParserTraceListener;
+import javancss.parser.Token;
+
+/**
+ * Test of what the parser tells its trace listener, and of the trace
+ * logged with -debug.
+ *
+ * @version $Id$
+ */
+public class ParserTraceListenerTest extends AbstractTestCase
+{
+    private static final String SOURCE = "class A {\n  int i;\n  void m() {\n    i = 1;\n  }\n}\n";
+
+    private static class RecordingListener
+        implements ParserTraceListener
+    {
+        final List<String> events = new ArrayList<String>();
+
+        public void event( String event, Token token )
+        {
+            events.add( token == null ? event : event + " " + token.image + " " + token.beginLine );
+        }
+
+        public void lookaheadStarted()
+        {
+        }
+
+        public void lookahead( String production, int first, int last, boolean matched, Token token, Token scanned )
+        {
+            events.add( production + ":" + last + ( matched ? " matched" : " failed" ) );
+        }
+    }
+
+    public void testEvents() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        JavaParser parser = new JavaParser( new StringReader( SOURCE ) );
+        parser.setTraceListener( listener );
+        parser.parse();
+
+        // the statement, counted when its ";" is consumed
+        assertTrue( listener.events.toString(), listener.events.contains( "_ncss++ ; 4" ) );
+        // the field and the method after trying all other declarations
+        assertTrue( listener.events.contains( "ClassBodyDeclaration:8 failed" ) );
+        assertTrue( listener.events.contains( "ClassBodyDeclaration:8 matched" ) );
+        // the value assigned is no assignment itself
+        assertTrue( listener.events.contains( "Expression:1 failed" ) );
+    }
+
+    public void testDebug() throws Exception
+    {
+        final List<String> messages = new ArrayList<String>();
+        Handler handler = new Handler()
+        {
+            @Override
+            public void publish( LogRecord record )
+            {
+                if ( record.getLevel() == Level.FINER )
+                {
+                    messages.add( record.getMessage() );
+                }
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        File file = getTestFile( 1 );
+        Logger parserLog = Logger.getLogger( JavaParser.class.getName() );
+        Logger javancssLog = Logger.getLogger( Javancss.class.getName() );
+        parserLog.addHandler( handler );
+        PrintStream out = System.out;
+        try
+        {
+            System.setOut( new PrintStream( new NullOutputStream() ) );
+            new Javancss( new String[] { "-debug", file.getPath() } );
+        }
+        finally
+        {
+            System.setOut( out );
+            parserLog.removeHandler( handler );
+            parserLog.setLevel( null );
+            javancssLog.setLevel( null );
+        }
+
+        boolean statement = false;
+        for ( String message : messages )
+        {
+            statement |= message.startsWith( "_ncss++: " ) && message.contains( " at line " );
+        }
+        assertTrue( messages.toString(), statement );
+    }
+}
@@ -0,0 +1,198 @@
+/*
+Copyright (C) 2014 Chr. Clemens Lee <clemens@kclee.com>.
+
+This file is part of JavaNCSS
+(http://javancss.codehaus.org/).
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA*/
+package javancss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Test of the search for source files in directories.
+ *
+ * @version $Id$
+ */
+public class SourceFinderTest extends AbstractTestCase
+{
+    private File _dir;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        _dir = new File( getTestDir(), "../source-finder-test" ).getCanonicalFile();
+        FileUtils.deleteDirectory( _dir );
+        _create( "A.java" );
+        _create( "README.txt" );
+        _create( "src/B.java" );
+        _create( "src/BTest.java" );
+        _create( "src/target/C.java" );
+        _create( "target/D.java" );
+        _create( "target/generated-sources/E.java" );
+    }
+
+    public void testAllJavaFiles()
+    {
+        // always sorted by path
+        assertEquals( Arrays.asList( "A.java", "src/B.java", "src/BTest.java", "src/target/C.java", "target/D.java",
+                                     "target/generated-sources/E.java" ),
+                      _find( Collections.<String>emptyList(), Collections.<String>emptyList() ) );
+    }
+
+    public void testExclude()
+    {
+        assertEquals( Arrays.asList( "A.java", "src/B.java", "src/BTest.java" ),
+                      _find( Collections.<String>emptyList(), Arrays.asList( "**/target" ) ) );
+        assertEquals( Arrays.asList( "A.java", "src/B.java", "src/target/C.java" ),
+                      _find( Collections.<String>emptyList(), Arrays.asList( "target/**", "**/*Test.java" ) ) );
+    }
+
+    public void testInclude()
+    {
+        assertEquals( Arrays.asList( "src/B.java", "src/BTest.java", "src/target/C.java" ),
+                      _find( Arrays.asList( "src/**" ), Collections.<String>emptyList() ) );
+        assertEquals( Arrays.asList( "A.java", "src/B.java" ),
+                      _find( Arrays.asList( "{A,src/B}.java" ), Collections.<String>emptyList() ) );
+    }
+
+    public void testSymbolicLinkLoop() throws IOException
+    {
+        try
+        {
+            Files.createSymbolicLink( new File( _dir, "src/loop" ).toPath(), _dir.toPath() );
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            return;
+        }
+
+        // the link back to the top directory is not followed
+        assertEquals( Arrays.asList( "A.java", "src/B.java", "src/BTest.java" ),
+                      _find( Collections.<String>emptyList(), Arrays.asList( "**/target" ) ) );
+    }
+
+    public void testArchive() throws IOException
+    {
+        File archive = new File( _dir, "sources.jar" );
+        ZipOutputStream out = new ZipOutputStream( new FileOutputStream( archive ) );
+        for ( String name : Arrays.asList( "A.java", "README.txt", "src/", "src/B.java", "src/target/C.java" ) )
+        {
+            out.putNextEntry( new ZipEntry( name ) );
+            if ( name.endsWith( ".java" ) )
+            {
+                out.write( ( "class " + name.charAt( name.length() - 6 ) + " { }\n" ).getBytes( "ISO-8859-1" ) );
+            }
+        }
+        out.close();
+
+        List<String> files = new ArrayList<String>();
+        for ( File file : new SourceFinder( Collections.singletonList( archive ), Collections.<String>emptyList(),
+                                            Arrays.asList( "**/target" ) ) )
+        {
+            assertTrue( file instanceof ArchiveEntry );
+            files.add( file.getPath().substring( archive.getPath().length() ) + " "
+                       + new String( ( (ArchiveEntry) file ).getContent(), "ISO-8859-1" ).trim() );
+        }
+        assertEquals( Arrays.asList( "!/A.java class A { }", "!/src/B.java class B { }" ), files );
+
+        // entries are named like in jar URLs in error messages
+        File entry = new ArchiveEntry( archive, "src/B.java", "class B {".getBytes( "ISO-8859-1" ) );
+        Javancss javancss = new Javancss( Collections.singletonList( entry ) );
+        assertTrue( javancss.getLastErrorMessage(),
+                    javancss.getLastErrorMessage().startsWith( "ParseException in " + archive.getPath() + "!/src/B.java" ) );
+    }
+
+    public void testClose() throws Exception
+    {
+        // more files than fit into the queue, so the walker has to wait
+        for ( int i = 0; i < 300; i++ )
+        {
+            _create( "many/F" + i + ".java" );
+        }
+        Iterator<File> files = new SourceFinder( Collections.singletonList( _dir ), Collections.<String>emptyList(),
+                                                 Collections.<String>emptyList() ).iterator();
+        assertTrue( files.hasNext() );
+        files.next();
+
+        SourceFinder.close( files );
+        assertFalse( files.hasNext() );
+        long end = System.currentTimeMillis() + 10000;
+        while ( _isWalking() && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+        assertFalse( _isWalking() );
+    }
+
+    private static boolean _isWalking()
+    {
+        for ( Thread thread : Thread.getAllStackTraces().keySet() )
+        {
+            if ( thread.getName().equals( "javancss-source-finder" ) && thread.isAlive() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void testShard()
+    {
+        List<File> files = new ArrayList<File>();
+        for ( String name : Arrays.asList( "E.java", "D.java", "C.java", "B.java", "A.java" ) )
+        {
+            // A.java is the largest one, E.java the smallest
+            files.add( new ArchiveEntry( name, new byte[10 * ( 'F' - name.charAt( 0 ) )] ) );
+        }
+
+        // consecutive parts, in the order given
+        assertEquals( "[E.java, D.java, C.java]", SourceFinder.shard( files, 1, 2 ).toString() );
+        assertEquals( "[B.java, A.java]", SourceFinder.shard( files, 2, 2 ).toString() );
+        assertEquals( "[E.java, D.java, C.java]", SourceFinder.shard( files, 1, 3 ).toString() );
+        assertEquals( "[B.java]", SourceFinder.shard( files, 2, 3 ).toString() );
+        assertEquals( "[A.java]", SourceFinder.shard( files, 3, 3 ).toString() );
+        assertEquals( files, SourceFinder.shard( files, 1, 1 ) );
+    }
+
+    private List<String> _find( List<String> includes, List<String> excludes )
+    {
+        List<String> files = new ArrayList<String>();
+        for ( File file : new SourceFinder( Collections.singletonList( _dir ), includes, excludes ) )
+        {
+            files.add( _dir.toPath().relativize( file.toPath() ).toString().replace( File.separatorChar, '/' ) );
+        }
+
+        return files;
+    }
+
+    private void _create( String path ) throws IOException
+    {
+        FileUtils.writeStringToFile( new File( _dir, path ), "class X { }\n", "ISO-8859-1" );
+    }
+}